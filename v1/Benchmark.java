@@ -0,0 +1,79 @@
+package jtjudge.Boxes.v1;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+//Times the Lv 5 search at a fixed depth on a fixed set of positions with 1, 2,
+//4 and 8 threads. The positions come from a seeded Random, so every run
+//searches the same positions.
+//Arguments: rows cols depth positions seed, all optional.
+public class Benchmark {
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		int cols = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int count = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+		Board[] positions = new Board[count];
+		Random random = new Random(seed);
+		for(int i = 0; i < count; i++) {
+			positions[i] = randomPosition(rows, cols, random);
+		}
+		//one untimed pass, so the first timing does not include compiling
+		for(Board b : positions) {
+			new Searcher(b, new TranspositionTable(Searcher.TABLE_BITS))
+					.findMove(new Searcher.Limits(Long.MAX_VALUE, System.nanoTime() + 1000000000L), depth);
+		}
+		System.out.println(rows + "x" + cols + ", depth " + depth + ", " + count +
+				" positions, " + Runtime.getRuntime().availableProcessors() + " cores");
+		System.out.println("threads       ms        nodes    nodes/s  speedup");
+		long base = 0;
+		for(int threads = 1; threads <= 8; threads *= 2) {
+			ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads);
+			long nodes = 0;
+			long start = System.nanoTime();
+			for(Board b : positions) {
+				//a fresh table each time, so no run helps the next
+				TranspositionTable table = new TranspositionTable(Searcher.TABLE_BITS);
+				Searcher.Limits limits = new Searcher.Limits(Long.MAX_VALUE, System.nanoTime() + Long.MAX_VALUE / 2);
+				if(pool == null) {
+					Searcher s = new Searcher(b, table);
+					s.findMove(limits, depth);
+					nodes += s.getNodes();
+				} else {
+					ParallelSearcher s = new ParallelSearcher(b, table, pool);
+					s.findMove(limits, depth);
+					nodes += s.getNodes();
+				}
+			}
+			long nanos = System.nanoTime() - start;
+			if(pool != null) pool.shutdown();
+			if(threads == 1) base = nanos;
+			System.out.println(String.format("%7d %8d %12d %10.0f %8.2f", threads,
+					nanos / 1000000, nodes, nodes * 1e9 / nanos, (double) base / nanos));
+		}
+	}
+
+	//Draws edges at random until none is left that gives away a box, as in
+	//the opening of a real game.
+	private static Board randomPosition(int rows, int cols, Random random) {
+		Board b = new Board(rows, cols);
+		b.addPlayer();
+		b.addPlayer();
+		int[] safe = new int[b.getNumEdges()];
+		while(true) {
+			int count = 0;
+			for(int e = b.nextAvailable(0); e != -1; e = b.nextAvailable(e + 1)) {
+				if(b.getRank(b.getLeft(e)) < 2 && b.getRank(b.getRight(e)) < 2) {
+					safe[count++] = e;
+				}
+			}
+			//stop a few safe moves short, so the search still has choices
+			if(count <= 6) return b;
+			b.make(safe[random.nextInt(count)]);
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package jtjudge.Boxes.v1;
+
+//Primitive mirror of a Game's state. Edges are stored as bits in a long[], box
+//ranks as four-bit nibbles packed sixteen to a long, and edge/box adjacency
+//comes from the flat tables of a shared Topology, so a move can be made without
+//touching the Move and Space object graph. Edge and box indices match
+//Move.getIndex() and Space.getIndex().
+class Board {
+
+	private final Topology topology;
+	private final int rows;
+	private final int cols;
+	private final int numEdges;
+	private final int numSpaces;
+
+	//adjacency tables, shared with every board of the same size
+	private final int[] edgeLeft;
+	private final int[] edgeRight;
+	private final int[] spaceSides;	//four edges per box, in side order
+
+	static final int
+	LEFT = 0,
+	TOP = 1,
+	RIGHT = 2,
+	BOTTOM = 3;
+
+	private final long[] edges;		//set bit = edge drawn
+	private final long[] ranks;		//four bits per box
+
+	//Zobrist key: the keys of the drawn edges xor the key of the side to move
+	private final long[] edgeKeys;
+	private long key;
+
+	private int[] scores;
+	private int numPlayers;
+	private int turn;
+	private int spacesLeft;
+	private int edgesLeft;
+	private int numThrees;	//boxes of rank 3, each one capturable
+
+	//basic cost of an edge, indexed by [diff == 1 ? 0 : 1][left rank][right rank]
+	private static final int[] COSTS = new int[2 * 5 * 5];
+
+	static {
+		for(int d = 0; d < 2; d++) {
+			for(int l = 0; l < 5; l++) {
+				for(int r = 0; r < 5; r++) {
+					COSTS[d * 25 + l * 5 + r] = Move.basicCost(l, r, d + 1);
+				}
+			}
+		}
+	}
+
+	Board(int rows, int cols) {
+		topology = Topology.get(rows, cols);
+		this.rows = rows;
+		this.cols = cols;
+		numEdges = topology.getNumEdges();
+		numSpaces = topology.getNumSpaces();
+		edgeLeft = topology.edgeLeft;
+		edgeRight = topology.edgeRight;
+		spaceSides = topology.spaceSides;
+		edgeKeys = topology.edgeKeys;
+		edges = new long[(numEdges + 63) >>> 6];
+		ranks = new long[(numSpaces + 15) >>> 4];
+		scores = new int[0];
+		numPlayers = 0;
+		turn = 0;
+		spacesLeft = numSpaces;
+		edgesLeft = numEdges;
+		key = turnKey(0);
+	}
+
+	//Draws the given edge for the side to move. Returns the number of boxes
+	//completed, and passes the turn if there were none.
+	int make(int e) {
+		edges[e >>> 6] |= 1L << e;
+		edgesLeft--;
+		key ^= edgeKeys[e];
+		int num = rankUp(edgeLeft[e]) + rankUp(edgeRight[e]);
+		if(num == 0) {
+			key ^= turnKey(turn);
+			if(++turn == numPlayers) turn = 0;
+			key ^= turnKey(turn);
+		} else {
+			scores[turn] += num;
+			spacesLeft -= num;
+		}
+		return num;
+	}
+
+	//Takes back the given edge, which must be the last one drawn.
+	void unmake(int e) {
+		int num = rankDown(edgeLeft[e]) + rankDown(edgeRight[e]);
+		edges[e >>> 6] &= ~(1L << e);
+		edgesLeft++;
+		key ^= edgeKeys[e];
+		if(num == 0) {
+			key ^= turnKey(turn);
+			if(--turn < 0) turn = numPlayers - 1;
+			key ^= turnKey(turn);
+		} else {
+			scores[turn] -= num;
+			spacesLeft += num;
+		}
+	}
+
+	boolean isAvailable(int e) {
+		return (edges[e >>> 6] & (1L << e)) == 0;
+	}
+
+	//Returns the first undrawn edge at or after the given index, or -1.
+	int nextAvailable(int from) {
+		if(from >= numEdges) return -1;
+		int w = from >>> 6;
+		long bits = ~edges[w] & (-1L << from);
+		while(bits == 0) {
+			if(++w == edges.length) return -1;
+			bits = ~edges[w];
+		}
+		int e = (w << 6) + Long.numberOfTrailingZeros(bits);
+		return e < numEdges ? e : -1;
+	}
+
+	int getRank(int s) {
+		if(s < 0) return 0;
+		return (int) (ranks[s >>> 4] >>> ((s & 15) << 2)) & 15;
+	}
+
+	int basicCost(int e, int diff) {
+		int d = diff == 1 ? 0 : 25;
+		return COSTS[d + getRank(edgeLeft[e]) * 5 + getRank(edgeRight[e])];
+	}
+
+	//Returns the index of the edge leaving the point at (row, col) to the right
+	//if horizontal or downward if not, or -1 if there is no such edge.
+	int getEdge(int row, int col, boolean horizontal) {
+		if(row < 0 || col < 0) return -1;
+		int width = 2 * cols + 1;
+		if(horizontal) {
+			if(row > rows || col >= cols) return -1;
+			return row < rows ? row * width + 2 * col + 1 : rows * width + col;
+		} else {
+			if(row >= rows || col > cols) return -1;
+			return row * width + 2 * col;
+		}
+	}
+
+	//Overwrites the state of this board with that of another of the same size.
+	//Only the flat arrays are copied; the adjacency tables never change.
+	void copy(Board b) {
+		if(b.topology != topology) throw new IllegalArgumentException();
+		System.arraycopy(b.edges, 0, edges, 0, edges.length);
+		System.arraycopy(b.ranks, 0, ranks, 0, ranks.length);
+		scores = b.scores.clone();
+		numPlayers = b.numPlayers;
+		turn = b.turn;
+		spacesLeft = b.spacesLeft;
+		edgesLeft = b.edgesLeft;
+		numThrees = b.numThrees;
+		key = b.key;
+	}
+	
+	void addPlayer() {
+		int[] s = new int[numPlayers + 1];
+		System.arraycopy(scores, 0, s, 0, numPlayers);
+		scores = s;
+		numPlayers++;
+	}
+
+	void removePlayer(int i) {
+		int[] s = new int[numPlayers - 1];
+		System.arraycopy(scores, 0, s, 0, i);
+		System.arraycopy(scores, i + 1, s, i, numPlayers - i - 1);
+		scores = s;
+		numPlayers--;
+		key ^= turnKey(turn);
+		if(turn > i) turn--;
+		if(turn == numPlayers) turn = 0;
+		key ^= turnKey(turn);
+	}
+
+	Topology getTopology() { return topology; }
+	
+	int getRows() { return rows; }
+
+	int getCols() { return cols; }
+
+	int getNumEdges() { return numEdges; }
+
+	int getNumSpaces() { return numSpaces; }
+
+	//Key the position would have after the given edge is drawn.
+	long getKeyAfter(int e) {
+		long k = key ^ edgeKeys[e];
+		if(getRank(edgeLeft[e]) == 3 || getRank(edgeRight[e]) == 3) return k;
+		int next = turn + 1 == numPlayers ? 0 : turn + 1;
+		return k ^ turnKey(turn) ^ turnKey(next);
+	}
+
+	int getLeft(int e) { return edgeLeft[e]; }
+
+	int getRight(int e) { return edgeRight[e]; }
+
+	int getSide(int s, int side) { return spaceSides[4 * s + side]; }
+
+	int getScore(int player) { return scores[player]; }
+
+	int getNumPlayers() { return numPlayers; }
+
+	int getTurn() { return turn; }
+
+	int getSpacesLeft() { return spacesLeft; }
+
+	int getEdgesLeft() { return edgesLeft; }
+
+	int getNumThrees() { return numThrees; }
+	
+	boolean isFinished() { return spacesLeft == 0; }
+
+	long getKey() { return key; }
+
+	//The drawn edges as one bit each, for boards of at most 64 edges.
+	long getEdgeBits() {
+		if(edges.length != 1) throw new IllegalStateException();
+		return edges[0];
+	}
+
+	//SplitMix64 finalizer. Keys depend only on the edge index and the player
+	//index, so equal positions hash equally across games of the same size.
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long turnKey(int player) {
+		return mix(~player);
+	}
+
+	//Returns 1 if the box was completed by this rank up, otherwise 0.
+	private int rankUp(int s) {
+		if(s < 0) return 0;
+		int shift = (s & 15) << 2;
+		int rank = (int) ((ranks[s >>> 4] += 1L << shift) >>> shift) & 15;
+		if(rank == 3) numThrees++;
+		else if(rank == 4) numThrees--;
+		return rank >>> 2;
+	}
+
+	//Returns 1 if the box was complete before this rank down, otherwise 0.
+	private int rankDown(int s) {
+		if(s < 0) return 0;
+		int shift = (s & 15) << 2;
+		long r = ranks[s >>> 4];
+		ranks[s >>> 4] = r - (1L << shift);
+		int rank = (int) (r >>> shift) & 15;
+		if(rank == 3) numThrees--;
+		else if(rank == 4) numThrees++;
+		return rank >>> 2;
+	}
+
+}
@@ -1,145 +1,251 @@
 package jtjudge.Boxes.v1;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
 
+//A run of moves that each lead into the next through a space of rank 2. The
+//members are linked through the moves themselves (see Move.getLink), so
+//membership is a pointer check and moves can be added, split off and joined
+//without copying.
 class Chain {
 
-	private char index;
-	private ArrayList<Move> members;
-	private ArrayList<Space> allSpaces;
-	private ArrayList<Space> sharedSpaces;
+	private final int id;
+	private Move head, tail;
+	private int numMoves;
+	//spaces beside any member, and those that a second member has been added
+	//beside, which stay until the chain empties
+	private HashSet<Space> allSpaces;
+	private HashSet<Space> sharedSpaces;
 	private ArrayList<Space> ends;
 	private boolean open;
 	private boolean isCycle;
-	
-	Chain(Move m1, Move m2) {
-		this.members = new ArrayList<>();
-		this.sharedSpaces = new ArrayList<>();
-		this.allSpaces = new ArrayList<>();
-		this.ends = new ArrayList<>();
+	private int stamp;		//last Game.make that saved this chain
+
+	Chain(int id, Move m1, Move m2) {
+		this.id = id;
+		this.allSpaces = new HashSet<>();
+		this.sharedSpaces = new HashSet<>();
+		this.ends = new ArrayList<>(4);
 		this.open = false;
 		addAtEnd(m1);
 		addAtEnd(m2);
 		findEnds();
 	}
 
+	//Copies a chain of another game onto the matching moves and spaces of this
+	//one.
+	Chain(Chain c, Move[] moves, Space[] spaces) {
+		this.id = c.id;
+		this.allSpaces = new HashSet<>();
+		this.sharedSpaces = new HashSet<>();
+		this.ends = new ArrayList<>(4);
+		for(int i = 0; i < c.ends.size(); i++) {
+			ends.add(spaces[c.ends.get(i).getIndex()]);
+		}
+		for(Space s : c.allSpaces) allSpaces.add(spaces[s.getIndex()]);
+		for(Space s : c.sharedSpaces) sharedSpaces.add(spaces[s.getIndex()]);
+		this.open = c.open;
+		this.isCycle = c.isCycle;
+		for(Move m = c.head, prev = null, next; m != null; prev = m, m = next) {
+			next = m.getLink(prev);
+			link(moves[m.getIndex()]);
+		}
+	}
+
 	void putAtEnd(Move m) {
 		if(m == null) throw new NullPointerException();
 		addAtEnd(m);
 		findEnds();
 	}
-	
+
 	void putAtBeginning(Move m) {
 		if(m == null) throw new NullPointerException();
-		addAtZero(m);
+		invert();
+		addAtEnd(m);
+		invert();
 		findEnds();
 	}
-	
+
 	//Removes a given move from the chain, reordering the chain according to the
 	//move removed. This method ensures that a CPU player will always capture the
 	//complete chain even when another player makes moves out of chain order.
 	boolean takeOut(Move m) {
-		if(members.isEmpty()) throw new IllegalStateException();
-		//get the index of this move within the chain
-		int index = members.indexOf(m);
-		//if the move is not at the start of the chain
-		if(index != 0) {
-			if(index == members.size() - 1) {
-				//if it is at the end, invert the chain
-				invert();
+		if(numMoves == 0) throw new IllegalStateException();
+		if(m.getChain() != this) throw new IllegalArgumentException();
+		if(m == tail && m != head) {
+			//if it is at the end, invert the chain
+			invert();
+		}
+		if(m == head) {
+			head = m.getLink(null);
+			if(head == null) {
+				tail = null;
 			} else {
-				//if it is in the middle somewhere, split the moves
-				//to its left and right into two lists, removing
-				//each one from the chain
-				ArrayList<Move> temp1 = new ArrayList<>();
-				ArrayList<Move> temp2 = new ArrayList<>();
-				int i = 0;
-				while(members.size() > 1) {
-					Move move = members.get(i);
-					if(!move.equals(m)) {
-						if(members.indexOf(move) < members.indexOf(m)) {
-							//add left moves to temp1
-							temp1.add(move);
-						} else {
-							//add right moves to temp2
-							temp2.add(move);	
-						}
-						remove(move);
-					} else {
-						i++;
-					}
+				head.replaceLink(m, null);
+			}
+		} else {
+			//if it is in the middle somewhere, walk out from it both ways at
+			//once until one side runs out, which gives the length of each side
+			Move a = m.getLinkA(), b = m.getLinkB(), aPrev = m, bPrev = m;
+			int count = 1;
+			Move end;
+			while(true) {
+				Move next = a.getLink(aPrev);
+				if(next == null) {
+					end = a;
+					break;
 				}
-				Collections.reverse(temp1);
-				//the given move m is now the first in the chain
-				//add the rest back--smallest side first
-				if(temp1.size() > temp2.size()) {
-					for(Move right : temp2) {
-						addAtEnd(right);
-					}
-					for(Move left : temp1) {
-						addAtEnd(left);
-					}
-				} else {
-					for(Move left : temp1) {
-						addAtEnd(left);
-					}
-					for(Move right : temp2) {
-						addAtEnd(right);
-					}
+				Move next2 = b.getLink(bPrev);
+				if(next2 == null) {
+					end = b;
+					break;
 				}
+				aPrev = a; a = next;
+				bPrev = b; b = next2;
+				count++;
+			}
+			//left runs from m toward the head, right from m toward the tail
+			boolean aIsLeft = (end == a) == (end == head);
+			Move left = aIsLeft ? m.getLinkA() : m.getLinkB();
+			Move right = aIsLeft ? m.getLinkB() : m.getLinkA();
+			int numLeft = (end == head) ? count : numMoves - 1 - count;
+			int numRight = numMoves - 1 - numLeft;
+			left.replaceLink(m, null);
+			right.replaceLink(m, null);
+			//the moves on each side follow on from m, smallest side first
+			if(numLeft > numRight) {
+				tail.replaceLink(null, left);
+				left.replaceLink(null, tail);
+				tail = head;
+				head = right;
+			} else {
+				head.replaceLink(null, right);
+				right.replaceLink(null, head);
+				head = left;
 			}
 		}
-		//remove m from the chain
-		remove(m);
+		m.setChain(null);
+		m.setLinks(null, null);
+		numMoves--;
+		removeSpaces(m);
 		//open the chain, if not open already
 		if(!open) open = true;
 		//update the set of end spaces
 		findEnds();
-		if(members.isEmpty()) return true;
-		return false;
+		return numMoves == 0;
 	}
-	
+
+	//Joins another chain onto the end of this one, which stays open or
+	//closed as it was. Only the members of the other chain are visited.
 	void absorb(Chain c) {
-		for(Move m : c.members) {
-			addAtEnd(m);
+		for(Move m = c.head, prev = null, next; m != null; prev = m, m = next) {
+			next = m.getLink(prev);
+			addSpaces(m);
+			m.setChain(this);
 		}
+		tail.replaceLink(null, c.head);
+		c.head.replaceLink(null, tail);
+		tail = c.tail;
+		numMoves += c.numMoves;
 		findEnds();
 	}
-	
+
 	void invert() {
-		Collections.reverse(members);
-		Collections.reverse(allSpaces);
-		Collections.reverse(sharedSpaces);
+		Move m = head;
+		head = tail;
+		tail = m;
 	}
 
-	char getIndex() { return this.index; }
-	
-	void setIndex(char c) { this.index = c; }
-	
-	ArrayList<Move> getMembers() { return this.members; }
-	
-	Move getLastMove() { return this.members.get(members.size() - 1); }
-	
+	//Pushes the complete state of the chain onto the given stack.
+	void save(UndoStack u) {
+		for(Move m = head, prev = null, next; m != null; prev = m, m = next) {
+			next = m.getLink(prev);
+			u.push(m.getIndex());
+		}
+		u.push(numMoves);
+		for(Space s : allSpaces) u.push(s.getIndex());
+		u.push(allSpaces.size());
+		for(Space s : sharedSpaces) u.push(s.getIndex());
+		u.push(sharedSpaces.size());
+		for(Space s : ends) u.push(s.getIndex());
+		u.push(ends.size());
+		u.push(open ? 1 : 0);
+		u.push(isCycle ? 1 : 0);
+	}
+
+	//Pops a state pushed by save(), relinking the members and pointing each of
+	//them back at this chain.
+	void restore(UndoStack u, Move[] moves, Space[] spaces) {
+		isCycle = u.pop() == 1;
+		open = u.pop() == 1;
+		int n = u.pop();
+		ends.clear();
+		for(int i = 0; i < n; i++) ends.add(null);
+		for(int i = n - 1; i >= 0; i--) {
+			ends.set(i, spaces[u.pop()]);
+		}
+		restore(u, sharedSpaces, spaces);
+		restore(u, allSpaces, spaces);
+		numMoves = u.pop();
+		Move next = null;
+		for(int i = 0; i < numMoves; i++) {
+			Move m = moves[u.pop()];
+			m.setChain(this);
+			m.setLinks(next, null);
+			if(next == null) {
+				tail = m;
+			} else {
+				next.replaceLink(null, m);
+			}
+			next = m;
+		}
+		head = next;
+	}
+
+	int getId() { return this.id; }
+
+	//single character shown on the console board in debug mode
+	char getLabel() { return (char)('0' + this.id); }
+
+	int getStamp() { return this.stamp; }
+
+	void setStamp(int stamp) { this.stamp = stamp; }
+
+	//Returns the members in order. Walks the chain, so prefer getFirstMove() and
+	//getLastMove() where they will do.
+	ArrayList<Move> getMembers() {
+		ArrayList<Move> members = new ArrayList<>(numMoves);
+		for(Move m = head, prev = null, next; m != null; prev = m, m = next) {
+			next = m.getLink(prev);
+			members.add(m);
+		}
+		return members;
+	}
+
+	Move getFirstMove() { return this.head; }
+
+	Move getLastMove() { return this.tail; }
+
 	ArrayList<Space> getEnds() { return this.ends; }
-	
-	int getNumMoves() { return this.members.size(); }
-	
+
+	int getNumMoves() { return this.numMoves; }
+
 	int getNumSpaces() { return this.sharedSpaces.size(); }
-	
-	boolean isEmpty() { return this.members.size() == 0; }
-	
+
+	boolean isEmpty() { return this.numMoves == 0; }
+
 	boolean isOpen() { return this.open; }
-	
+
 	void setOpen() { this.open = true; }
-	
+
 	boolean isCycle() { return this.isCycle; }
-	
+
 	boolean hasEndSpace(Space s) { return this.ends.contains(s);}
-	
+
 	@Override
 	public String toString() {
-		String output = Character.toString(index) + ": ";
+		String output = id + ": ";
+		ArrayList<Move> members = getMembers();
 		if(getNumMoves() > 1) {
 			for(int i = 0; i < members.size() - 1; i++) {
 				Move m = members.get(i);
@@ -161,107 +267,75 @@ class Chain {
 		}
 		return output;
 	}
-	
+
 	private void addAtEnd(Move m) {
-		members.add(m);
-		Space left = m.getLeft();
-		Space right = m.getRight();
-		if(left != null) {
-			if(allSpaces.contains(left)) {
-				if(!sharedSpaces.contains(left)) sharedSpaces.add(left);
-			} else {
-				allSpaces.add(left);
-			}
-		}
-		if(right != null) {
-			if(allSpaces.contains(right)) {
-				if(!sharedSpaces.contains(right)) sharedSpaces.add(right);
-			} else {
-				allSpaces.add(right);
-			}
-		}
+		addSpaces(m);
+		link(m);
 	}
 	
-	private void addAtZero(Move m) {
-		members.add(0, m);
-		Space left = m.getLeft();
-		Space right = m.getRight();
-		if(left != null) {
-			if(allSpaces.contains(left)) {
-				if(!sharedSpaces.contains(left)) sharedSpaces.add(left);
-			} else {
-				allSpaces.add(left);
-			}
-		}
-		if(right != null) {
-			if(allSpaces.contains(right)) {
-				if(!sharedSpaces.contains(right)) sharedSpaces.add(right);
-			} else {
-				allSpaces.add(right);
-			}
+	private void link(Move m) {
+		m.setChain(this);
+		if(tail == null) {
+			head = m;
+			m.setLinks(null, null);
+		} else {
+			tail.replaceLink(null, m);
+			m.setLinks(tail, null);
 		}
+		tail = m;
+		numMoves++;
 	}
-	
-	private void remove(Move m) {
-		if(m == null) throw new NullPointerException();
-		if(members.isEmpty()) throw new IllegalStateException();
-		members.remove(m);
-		if(this.members.size() == 0) {
-			sharedSpaces.clear();
+
+	//a space is shared once a second member is added beside it
+	private void addSpaces(Move m) {
+		Space left = m.getLeft(), right = m.getRight();
+		if(left != null && !allSpaces.add(left)) sharedSpaces.add(left);
+		if(right != null && !allSpaces.add(right)) sharedSpaces.add(right);
+	}
+
+	//Forgets the spaces beside a move taken out of the chain, except shared
+	//ones that are not yet full.
+	private void removeSpaces(Move m) {
+		if(numMoves == 0) {
 			allSpaces.clear();
-			ends.clear();
-		} else {
-			Space left = m.getLeft();
-			Space right = m.getRight();
-			if(left != null && allSpaces.contains(left)) {
-				if(sharedSpaces.contains(left)) {
-					if(left.isFull()) {
-						sharedSpaces.remove(left);
-					}
-				} else {
-					allSpaces.remove(left);
-				}
-			}
-			if(right != null && allSpaces.contains(right)) {
-				if(sharedSpaces.contains(right)) {
-					if(right.isFull()) {
-						sharedSpaces.remove(right);
-					}
-				} else {
-					allSpaces.remove(right);
-				}
-			}
+			sharedSpaces.clear();
+			return;
 		}
+		removeSpace(m.getLeft());
+		removeSpace(m.getRight());
 	}
-	
+
+	private void removeSpace(Space s) {
+		if(s == null || !allSpaces.contains(s)) return;
+		if(!sharedSpaces.contains(s)) {
+			allSpaces.remove(s);
+		} else if(s.isFull()) {
+			sharedSpaces.remove(s);
+		}
+	}
+
+	private void restore(UndoStack u, HashSet<Space> set, Space[] spaces) {
+		int n = u.pop();
+		set.clear();
+		for(int i = 0; i < n; i++) set.add(spaces[u.pop()]);
+	}
+
 	private void findEnds() {
 		ends.clear();
-		if(members.size() < 4) {
-			this.isCycle = false;
-		} else {
-			this.isCycle = true;
-		}
-		if(members.isEmpty()) return;
-		Move start = members.get(0);
-		Move end = members.get(members.size() - 1);
-		//at maximum, two of these will be true
-		Space left = start.getLeft(), right = start.getRight();
-		if(left == null || right == null) {
-			this.isCycle = false;
-		}
+		this.isCycle = false;
+		if(numMoves == 0) return;
+		addEnds(head);
+		if(numMoves != 1) addEnds(tail);
+		this.isCycle = numMoves >= 4 && ends.isEmpty() &&
+				head.getLeft() != null && head.getRight() != null &&
+				tail.getLeft() != null && tail.getRight() != null;
+	}
+
+	//at maximum, two spaces of the first and last moves are ends
+	private void addEnds(Move m) {
+		Space left = m.getLeft(), right = m.getRight();
 		if(left != null && !sharedSpaces.contains(left)) ends.add(left);
 		if(right != null && !sharedSpaces.contains(right)) ends.add(right);
-		if(members.size() != 1) {
-			left = end.getLeft(); right = end.getRight();
-			if(left == null || right == null) {
-				this.isCycle = false;
-			}
-			if(left != null && !sharedSpaces.contains(left)) ends.add(left);
-			if(right != null && !sharedSpaces.contains(right)) ends.add(right);
-		}
-		if(!ends.isEmpty()) {
-			this.isCycle = false;
-		}
 	}
-		
+
 }
@@ -6,6 +6,9 @@ import java.util.concurrent.TimeUnit;
 
 public final class ConsoleGameRunner {
 
+	//longest a CPU may think about one move
+	private static final long MOVE_MILLIS = 100;
+
 	private Game game;
 	private Scanner in;
 	private int delay, lateDelay;
@@ -35,9 +38,7 @@ public final class ConsoleGameRunner {
 		String rows = in.next();
 		String cols = in.next();
 		while(true) {
-			while( rows.length() != 1 || (cols.length() != 1  && cols.length() != 2)
-					|| !Character.isDigit(rows.charAt(0))
-					|| !Character.isDigit(cols.charAt(0))   ) {
+			while(!isNumber(rows) || !isNumber(cols)) {
 				System.out.println("Invalid format. Try again: ");
 				rows = in.next();
 				cols = in.next();
@@ -77,11 +78,10 @@ public final class ConsoleGameRunner {
 				}
 				resp = resp.toUpperCase();
 				if(resp.charAt(0) == 'Y') {
-					System.out.println("[Player " + i + "] Level (1 - 5): ");
+					System.out.println("[Player " + i + "] Level (1 - 6): ");
 					resp = in.next();
-					while(resp.length() != 1 || (resp.charAt(0) != '1' && resp.charAt(0) != '2'
-							&& resp.charAt(0) != '3' && resp.charAt(0) != '4' && resp.charAt(0) != '5')) {
-						System.out.println("[Player " + i + "] Invalid. Enter '1', '2', '3', '4', or '5': ");
+					while(resp.length() != 1 || resp.charAt(0) < '1' || resp.charAt(0) > '6') {
+						System.out.println("[Player " + i + "] Invalid. Enter '1', '2', '3', '4', '5', or '6': ");
 						resp = in.next();
 					}
 					int level = Integer.parseInt(resp);
@@ -203,6 +203,22 @@ public final class ConsoleGameRunner {
 		}
 	}
 	
+	//true for up to nine digits, so the value fits in an int
+	private static boolean isNumber(String s) {
+		if(s.isEmpty() || s.length() > 9) return false;
+		for(int i = 0; i < s.length(); i++) {
+			if(!Character.isDigit(s.charAt(i))) return false;
+		}
+		return true;
+	}
+	
+	//true for one or more letters followed by a number, such as "A1" or "ab12"
+	private static boolean isPoint(String s) {
+		int i = 0;
+		while(i < s.length() && Character.isLetter(s.charAt(i))) i++;
+		return i > 0 && isNumber(s.substring(i));
+	}
+	
 	private void runTurn() {
 		Player player = game.getTurn();
 		if(debugMode && game.isEndGame()) {
@@ -212,8 +228,11 @@ public final class ConsoleGameRunner {
 		System.out.println("Enter pair of coordinates: ");
 		if(player.isCPU()) {
 			try {
-				Move m = player.thinkOfMove(game, player.getDiff());
+				Move m = player.thinkOfMove(game, player.getDiff(), MOVE_MILLIS);
 				System.out.println(m);
+				if(debugMode && player.getDiff() == 6) {
+					System.out.println("[MCTS] " + (long) game.getPlayoutRate() + " playouts/s");
+				}
 				TimeUnit.MILLISECONDS.sleep(delay);
 				if(game.isEndGame()) TimeUnit.MILLISECONDS.sleep(lateDelay);
 				game.make(m, player);
@@ -224,19 +243,10 @@ public final class ConsoleGameRunner {
 				String a = in.next();
 				String b = in.next();
 				try {
-					if( a.length() != 2 || b.length() != 2 ||
-						!Character.isLetter(a.charAt(0)) || !Character.isDigit(a.charAt(1)) ||
-						!Character.isLetter(b.charAt(0)) || !Character.isDigit(b.charAt(1))) {
+					if(!isPoint(a) || !isPoint(b)) {
 						throw new IllegalStateException();
 					}
-					String name = a.substring(0, 1).toUpperCase() + a.substring(1,2) + ", " +
-									b.substring(0, 1).toUpperCase() + b.substring(1, 2);
-					Move m = game.retrieve(name);
-					if(m == null) {
-						name = b.substring(0, 1).toUpperCase() + b.substring(1, 2) + ", " +
-								a.substring(0, 1).toUpperCase() + a.substring(1, 2);
-						m = game.retrieve(name);
-					}
+					Move m = game.retrieve(a.toUpperCase() + ", " + b.toUpperCase());
 					if(m == null) throw new IllegalArgumentException();
 					game.make(m, player);
 					break;
@@ -0,0 +1,189 @@
+package jtjudge.Boxes.v1;
+
+//The available edges of a Board grouped by the ranks of the two boxes beside
+//them, which is all that Move.basicCost depends on. Drawing or erasing an edge
+//only changes the ranks of its own two boxes, so refresh() moves just the
+//edges around them, and the cheapest edges for Lv 1-2 are found by looking at
+//the sixteen groups rather than every edge.
+class CostIndex {
+
+	private static final int GROUPS = 16;	//left rank * 4 + right rank, each 0-3
+	private static final int DRAWN = GROUPS;
+
+	//cost of each group, indexed by [diff - 1][group]
+	private static final int[][] COSTS = new int[2][GROUPS];
+
+	//masks of groups, a bit each: edges that complete a box, and edges that
+	//leave no box at rank 3
+	static final int CAPTURES, SAFE;
+
+	static {
+		for(int d = 0; d < 2; d++) {
+			for(int g = 0; g < GROUPS; g++) {
+				COSTS[d][g] = Move.basicCost(g >>> 2, g & 3, d + 1);
+			}
+		}
+		int captures = 0, safe = 0;
+		for(int g = 0; g < GROUPS; g++) {
+			int lrank = g >>> 2, rrank = g & 3;
+			if(lrank == 3 || rrank == 3) captures |= 1 << g;
+			if(lrank < 2 && rrank < 2) safe |= 1 << g;
+		}
+		CAPTURES = captures;
+		SAFE = safe;
+	}
+
+	private final Board board;
+
+	//every edge, grouped in order with the drawn edges last; group g runs
+	//from start[g] to start[g + 1]
+	private final int[] order;
+	private final int[] start;
+	private final int[] groupOf;
+	private final int[] position;	//index of each edge in order
+
+	CostIndex(Board board) {
+		this.board = board;
+		int numEdges = board.getNumEdges();
+		order = new int[numEdges];
+		start = new int[DRAWN + 2];
+		groupOf = new int[numEdges];
+		position = new int[numEdges];
+		refreshAll();
+	}
+
+	//Copies an index of a board of the same size for the given board, which
+	//must already have copied that index's board.
+	CostIndex(Board board, CostIndex c) {
+		if(c.order.length != board.getNumEdges()) throw new IllegalArgumentException();
+		this.board = board;
+		order = c.order.clone();
+		start = c.start.clone();
+		groupOf = c.groupOf.clone();
+		position = c.position.clone();
+	}
+
+	//Takes the state of an index of a board of the same size, which this
+	//index's board must already have copied.
+	void copy(CostIndex c) {
+		if(c.order.length != order.length) throw new IllegalArgumentException();
+		System.arraycopy(c.order, 0, order, 0, order.length);
+		System.arraycopy(c.start, 0, start, 0, start.length);
+		System.arraycopy(c.groupOf, 0, groupOf, 0, groupOf.length);
+		System.arraycopy(c.position, 0, position, 0, position.length);
+	}
+
+	//Call after the whole board changes, as by Board.copy(). Sorts every edge
+	//into its group in one pass by counting the groups first.
+	void refreshAll() {
+		for(int g = 0; g < start.length; g++) {
+			start[g] = 0;
+		}
+		for(int e = 0; e < groupOf.length; e++) {
+			groupOf[e] = groupFor(e);
+			start[groupOf[e] + 1]++;
+		}
+		for(int g = 1; g < start.length; g++) {
+			start[g] += start[g - 1];
+		}
+		int[] next = start.clone();
+		for(int e = 0; e < groupOf.length; e++) {
+			int i = next[groupOf[e]]++;
+			order[i] = e;
+			position[e] = i;
+		}
+	}
+
+	//Call after edge e is drawn or erased on the board.
+	void refresh(int e) {
+		update(e);
+		refreshBox(board.getLeft(e));
+		refreshBox(board.getRight(e));
+	}
+
+	//Returns the lowest basic cost of any available edge for the given
+	//difficulty, or Integer.MAX_VALUE if there is none.
+	int getMinCost(int diff) {
+		int[] costs = COSTS[diff == 1 ? 0 : 1];
+		int min = Integer.MAX_VALUE;
+		for(int g = 0; g < GROUPS; g++) {
+			if(start[g + 1] > start[g] && costs[g] < min) min = costs[g];
+		}
+		return min;
+	}
+
+	//Returns an edge of the lowest basic cost for the given difficulty, each
+	//one equally likely, or -1 if there is none.
+	int pick(int diff, SplitMix64 random) {
+		int[] costs = COSTS[diff == 1 ? 0 : 1];
+		int min = getMinCost(diff);
+		int groups = 0;
+		for(int g = 0; g < GROUPS; g++) {
+			if(costs[g] == min) groups |= 1 << g;
+		}
+		return pickFrom(groups, random);
+	}
+
+	//Number of available edges in the groups set in the mask.
+	int count(int groups) {
+		int count = 0;
+		for(int g = 0; g < GROUPS; g++) {
+			if((groups >>> g & 1) != 0) count += start[g + 1] - start[g];
+		}
+		return count;
+	}
+
+	//Returns an available edge in the groups set in the mask, each one equally
+	//likely, or -1 if there is none.
+	int pickFrom(int groups, SplitMix64 random) {
+		int count = count(groups);
+		if(count == 0) return -1;
+		int i = random.nextInt(count);
+		for(int g = 0; g < GROUPS; g++) {
+			if((groups >>> g & 1) == 0) continue;
+			int size = start[g + 1] - start[g];
+			if(i < size) return order[start[g] + i];
+			i -= size;
+		}
+		throw new IllegalStateException();
+	}
+
+	private void refreshBox(int s) {
+		if(s < 0) return;
+		for(int side = 0; side < 4; side++) {
+			update(board.getSide(s, side));
+		}
+	}
+
+	//Moves an edge to the group for its current ranks, or to the drawn edges.
+	//Each step swaps it to the end of its group and moves the boundary past
+	//it, so it takes at most one step per group in between.
+	private void update(int e) {
+		int g = groupFor(e);
+		int old = groupOf[e];
+		for(int k = old; k < g; k++) {
+			swap(e, start[k + 1] - 1);
+			start[k + 1]--;
+		}
+		for(int k = old; k > g; k--) {
+			swap(e, start[k]);
+			start[k]++;
+		}
+		groupOf[e] = g;
+	}
+
+	private int groupFor(int e) {
+		if(!board.isAvailable(e)) return DRAWN;
+		return (board.getRank(board.getLeft(e)) << 2) | board.getRank(board.getRight(e));
+	}
+
+	//puts edge e at index i of order, and the edge there where e was
+	private void swap(int e, int i) {
+		int other = order[i];
+		order[position[e]] = other;
+		position[other] = position[e];
+		order[i] = e;
+		position[e] = i;
+	}
+
+}
@@ -0,0 +1,121 @@
+package jtjudge.Boxes.v1;
+
+import java.util.Arrays;
+
+//Exact values of two-player endgames made only of closed chains, running from
+//the border to the border, and closed cycles. Such a position is determined by
+//the lengths of its chains and cycles, so values are memoized on the sorted
+//lengths and shared by every game.
+//The memo is a fixed-size table in which a new value always replaces the
+//old. Each slot holds one immutable entry, so threads may read and write it
+//at once without locking and never see half of an entry.
+class EndgameSolver {
+
+	private static final int TABLE_BITS = 16;
+
+	private static final Entry[] VALUES = new Entry[1 << TABLE_BITS];
+
+	//most work one call may take, in positions times their size, so that it
+	//stays quick
+	private static final long MAX_WORK = 1 << 14;
+
+	private EndgameSolver() {
+		//suppress default constructor
+	}
+
+	//Returns the boxes the player to move wins minus the boxes the opponent
+	//wins, given the number of boxes in each chain and each cycle.
+	static int value(int[] chains, int[] cycles) {
+		int[] c = chains.clone(), l = cycles.clone();
+		Arrays.sort(c);
+		Arrays.sort(l);
+		return solve(c, l);
+	}
+
+	//Whether value() can be called without too much work. Every position it
+	//reaches keeps some number of the chains of each length and some number
+	//of the cycles of each length.
+	static boolean isSmall(int[] chains, int[] cycles) {
+		long size = chains.length + cycles.length + 1;
+		return countPositions(chains) * countPositions(cycles) * size <= MAX_WORK;
+	}
+
+	private static long countPositions(int[] lengths) {
+		int[] a = lengths.clone();
+		Arrays.sort(a);
+		long count = 1;
+		int i = 0;
+		while(i < a.length && count <= MAX_WORK) {
+			int j = i + 1;
+			while(j < a.length && a[j] == a[i]) j++;
+			count *= j - i + 1;
+			i = j;
+		}
+		return count;
+	}
+
+	//Value to the player who opens a chain or cycle, where rest is the value
+	//of the other chains and cycles to whoever moves next. The opponent either
+	//takes every box and moves next, or takes all but two (four in a cycle)
+	//and hands the move back. A chain of two is opened in the middle so that
+	//it cannot be declined.
+	static int openValue(int length, boolean cycle, int rest) {
+		if(cycle) return Math.min(-length - rest, 8 - length + rest);
+		if(length <= 2) return -length - rest;
+		return Math.min(-length - rest, 4 - length + rest);
+	}
+
+	private static int solve(int[] chains, int[] cycles) {
+		if(chains.length == 0 && cycles.length == 0) return 0;
+		int slot = (int) hash(chains, cycles) & (VALUES.length - 1);
+		Entry e = VALUES[slot];
+		if(e != null && Arrays.equals(e.chains, chains) && Arrays.equals(e.cycles, cycles)) {
+			return e.value;
+		}
+		int best = Integer.MIN_VALUE;
+		for(int i = 0; i < chains.length; i++) {
+			if(i > 0 && chains[i] == chains[i - 1]) continue;
+			int rest = solve(without(chains, i), cycles);
+			best = Math.max(best, openValue(chains[i], false, rest));
+		}
+		for(int i = 0; i < cycles.length; i++) {
+			if(i > 0 && cycles[i] == cycles[i - 1]) continue;
+			int rest = solve(chains, without(cycles, i));
+			best = Math.max(best, openValue(cycles[i], true, rest));
+		}
+		VALUES[slot] = new Entry(chains, cycles, best);
+		return best;
+	}
+
+	private static long hash(int[] chains, int[] cycles) {
+		long h = chains.length;
+		for(int i = 0; i < chains.length; i++) h = Board.mix(h ^ chains[i]);
+		for(int i = 0; i < cycles.length; i++) h = Board.mix(h + cycles[i]);
+		return Board.mix(h);
+	}
+
+	//copy of a sorted array with one entry left out, still sorted
+	private static int[] without(int[] a, int i) {
+		int[] b = new int[a.length - 1];
+		System.arraycopy(a, 0, b, 0, i);
+		System.arraycopy(a, i + 1, b, i, a.length - i - 1);
+		return b;
+	}
+
+	//the sorted lengths of a position and its value; the arrays are never
+	//written after they are stored
+	private static class Entry {
+
+		final int[] chains;
+		final int[] cycles;
+		final int value;
+
+		Entry(int[] chains, int[] cycles, int value) {
+			this.chains = chains;
+			this.cycles = cycles;
+			this.value = value;
+		}
+
+	}
+
+}
@@ -2,11 +2,12 @@ package jtjudge.Boxes.v1;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 class Game {
 
@@ -19,33 +20,89 @@ class Game {
 	
 	private int spacesLeft;
 	
+	//primitive mirror of the object graph, kept in step by make()
+	private final Board board;
+	private CostIndex costs;	//available edges by basic cost, made for Lv 1-2 and 6
+	private PatternEvaluator eval;	//leaf values of the position, made for Lv 5
+	
 	private ArrayList<Player> players;
 	private ArrayList<Player> winners;
 	private Player currentTurn;
 	
-	Move nonmove;	//for iterator
+	//Moves and Spaces are only made when first asked for, by getMove() and
+	//getSpace(), so a new game costs a few arrays whatever its size
 	private Move mostRecent;
-	private HashMap<String, Move> legalMoves;
-	private HashSet<Move> nonChains;
+	private Move[] moves;	//indexed by Move.getIndex(), null until made
+	private MoveSet nonChains;
 
-	Space nonspace;	//for iterator
+	private Space[] spaces;	//indexed by Space.getIndex(), null until made
 	
 	//used by high-level CPU players
+	private boolean boardOnly;	//a snapshot without Moves, Spaces or chains
 	private boolean isEndGame;
 	private boolean isFinished;
 	private HashSet<Chain> activeChains;
 	
+	//chain ids stay fixed for the life of a chain; the ids of removed chains
+	//are handed out again before new ones
+	private int lastId;
+	private int[] freeIds;
+	private int numFreeIds;
+	
 	private HashSet<Space> endSpaces;
 	private HashSet<Space> sharedEndSpaces;
 	
 	private HashSet<Move> mergers;
 	private HashSet<Move> blockers;
 	
+	//chains changed and spaces to recheck since the end spaces were last updated
+	private ArrayList<Chain> touched;
+	private ArrayList<Space> dirty;
+	
+	//undo records, pushed by make() and popped by unmake()
+	private UndoStack history;
+	private int stamp;	//counts calls to make(), never decreases
+	
+	private static final int
+	UNDO_MAKE = 0,
+	UNDO_CHAIN = 1,
+	UNDO_CHAIN_ADDED = 2,
+	UNDO_CHAIN_REMOVED = 3,
+	UNDO_NONCHAIN = 4;
+	
+	private static final int
+	WAS_STRATEGIZED = 1,
+	WAS_END_GAME = 2;
+	
+	//Lv 5-6 search settings, and results kept between moves
+	private TranspositionTable table;
+	private ForkJoinPool searchPool;	//null to search on the caller's thread
+	private double playoutRate;		//of the last Lv 6 search
+	
+	//threads a Lv 5 CPU searches on, one per core
+	private static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	//time a move is given when no deadline is passed in
+	private static final long SEARCH_MILLIS = 100;
+	
+	//the deadline is checked every CHAIN_CHECK_MASK + 1 chains while reading
+	//them, as a big board may have hundreds of thousands
+	private static final int CHAIN_CHECK_MASK = 255;
+	
+	//random choices of the CPUs, seeded once per game
+	private SplitMix64 random;
+	
 	//DEBUG MODE
 	private int seed;
 	private static final int NO_SEED = 0;
 	
 	Game(int rows, int cols) {
+		this(rows, cols, true);
+	}
+	
+	//Unless whole, leaves out the moves outside chains, which only the
+	//original of a board-only copy keeps.
+	private Game(int rows, int cols, boolean whole) {
 		if(rows < 1 || rows > ROW_LIMIT || 
 				cols < 1 || cols > COL_LIMIT) {
 			throw new IllegalArgumentException();
@@ -55,47 +112,175 @@ class Game {
 		spacesLeft = rows * cols;
 		players = new ArrayList<>();
 		winners = new ArrayList<>();
-		legalMoves = new HashMap<>();
-		nonChains = new HashSet<>();
+		moves = new Move[rows*(cols+1) + cols*(rows+1)];
+		spaces = new Space[rows * cols];
+		if(whole) {
+			nonChains = new MoveSet(moves.length);
+			nonChains.fill();
+		}
 		this.seed = NO_SEED;
+		random = SplitMix64.create();
 		endSpaces = new HashSet<>();
 		sharedEndSpaces = new HashSet<>();
 		mergers = new HashSet<>();
 		blockers = new HashSet<>();
+		touched = new ArrayList<>();
+		dirty = new ArrayList<>();
 		isEndGame = false;
 		isFinished = false;
 		activeChains = new HashSet<>();
-		constructSpaces();
-		constructMoves();
-		connectMovesToSpaces();
+		lastId = 0;
+		freeIds = new int[16];
+		numFreeIds = 0;
+		history = new UndoStack();
+		stamp = 0;
+		board = new Board(rows, cols);
 	}
 	
 	//DEBUG MODE
 	Game(int rows, int cols, int seed) {
 		this(rows, cols);
 		this.seed = seed;
+		random = new SplitMix64(seed);
+	}
+	
+	//Copies the position of another game, including its players, so the copy
+	//can be searched on another thread. The only thing shared is the Lv 5
+	//transposition table, which is safe to use from several threads, so what
+	//a search of the copy learns is kept for the original.
+	//Takes time in proportion to the size of the board. The copy's history
+	//starts empty, so it cannot unmake moves made before the snapshot. Only
+	//the Moves and Spaces the original has made are made in the copy; the
+	//rest are untouched in both. Unless whole, the copy leaves out the Moves,
+	//Spaces and chains, and can only be searched at Lv 5-6 outside the
+	//endgame.
+	private Game(Game g, boolean whole) {
+		this(g.rows, g.cols, whole);
+		this.seed = g.seed;
+		random = g.random.split();
+		table = g.getTable();
+		board.copy(g.board);
+		searchPool = g.searchPool;
+		for(Player p : g.players) {
+			players.add(Player.constructCopy(p));
+		}
+		for(Player p : g.winners) {
+			winners.add(players.get(g.players.indexOf(p)));
+		}
+		if(g.currentTurn != null) {
+			currentTurn = players.get(g.players.indexOf(g.currentTurn));
+		}
+		spacesLeft = g.spacesLeft;
+		isEndGame = g.isEndGame;
+		isFinished = g.isFinished;
+		boardOnly = !whole;
+		if(g.costs != null) costs = new CostIndex(board, g.costs);
+		if(g.eval != null) eval = new PatternEvaluator(board, g.eval);
+		if(boardOnly) return;
+		for(int i = 0; i < spaces.length; i++) {
+			if(g.spaces[i] != null) getSpace(i).copy(g.spaces[i]);
+		}
+		for(int i = 0; i < moves.length; i++) {
+			Move o = g.moves[i];
+			if(o == null) continue;
+			Move m = getMove(i);
+			if(!o.isAvailable()) m.makeUnavailable();
+			m.setStrategized(o.isStrategized());
+		}
+		for(Chain c : g.activeChains) {
+			activeChains.add(new Chain(c, moves, spaces));
+		}
+		nonChains.copy(g.nonChains);
+		if(g.mostRecent != null) mostRecent = moves[g.mostRecent.getIndex()];
+		lastId = g.lastId;
+		freeIds = g.freeIds.clone();
+		numFreeIds = g.numFreeIds;
+		for(Space s : g.endSpaces) endSpaces.add(spaces[s.getIndex()]);
+		for(Space s : g.sharedEndSpaces) sharedEndSpaces.add(spaces[s.getIndex()]);
+		for(Move m : g.mergers) mergers.add(moves[m.getIndex()]);
+		for(Move m : g.blockers) blockers.add(moves[m.getIndex()]);
+	}
+	
+	//Returns an independent copy of this game. See Game(Game, boolean).
+	Game snapshot() {
+		return new Game(this, true);
+	}
+	
+	//As above, but only copies what analyzing at the given level reads. Lv 5-6
+	//look at nothing but the board until the endgame, and on a big board
+	//copying the rest takes longer than they are given to think.
+	Game snapshot(int diff) {
+		return new Game(this, diff < 5 || isEndGame);
 	}
 
 	GameIterator getIterator() {
-		return new GameIterator(nonmove, nonspace, rows, cols);
+		return new GameIterator(this, rows, cols);
 	}
 	
+	//Returns the move with the given index, available or not, making it and
+	//linking it to its spaces if this is the first time it is asked for.
+	Move getMove(int index) {
+		Move m = moves[index];
+		if(m == null) {
+			Topology t = board.getTopology();
+			m = new Move(index, t.getRow(index), t.getCol(index), t.isHorizontal(index));
+			moves[index] = m;
+			int left = board.getLeft(index), right = board.getRight(index);
+			if(left != -1) {
+				Space s = getSpace(left);
+				m.setLeft(s);
+				s.setSide(t.isHorizontal(index) ? Board.BOTTOM : Board.RIGHT, m);
+			}
+			if(right != -1) {
+				Space s = getSpace(right);
+				m.setRight(s);
+				s.setSide(t.isHorizontal(index) ? Board.TOP : Board.LEFT, m);
+			}
+		}
+		return m;
+	}
+	
+	//Returns the space with the given index, making it if this is the first
+	//time it is asked for. Its moves are made as it asks for them.
+	Space getSpace(int index) {
+		Space s = spaces[index];
+		if(s == null) {
+			s = new Space(index, this);
+			spaces[index] = s;
+		}
+		return s;
+	}
+	
+	//index of the move on the given side of a space
+	int getSide(int space, int side) { return board.getSide(space, side); }
+	
 	void make(Move m, Player p) {
-		if(players.isEmpty()) throw new IllegalStateException();
+		if(players.isEmpty() || boardOnly) throw new IllegalStateException();
 		if(m == null || p == null) throw new NullPointerException();
 		if(!m.isAvailable()) throw new IllegalStateException();
 		int num = 0;
 		Space left = m.getLeft(), right = m.getRight();
+		stamp++;
+		history.push(m.getIndex());
+		history.push(players.indexOf(p));
+		history.push(players.indexOf(currentTurn));
+		history.push(mostRecent == null ? -1 : mostRecent.getIndex());
+		history.push((m.isStrategized() ? WAS_STRATEGIZED : 0) |
+				(isEndGame ? WAS_END_GAME : 0));
+		history.push(UNDO_MAKE);
+		board.make(m.getIndex());
+		if(costs != null) costs.refresh(m.getIndex());
+		if(eval != null) eval.make(m.getIndex());
 		if(left != null) left.remove(m);
 		if(right != null) right.remove(m);
 		if(m.hasChain()) {
 			Chain c = m.getChain();
+			save(c);
 			if(c.takeOut(m)) {
-				activeChains.remove(c);
+				dropChain(c);
 			}
 		}
-		legalMoves.remove(m.toString());
-		nonChains.remove(m);
+		removeNonChain(m);
 		m.makeUnavailable();
 		m.setStrategized(false);
 		mostRecent = m;
@@ -111,6 +296,9 @@ class Game {
 		} else if(right != null && right.getRank() == 2) {
 			buildChain(right);
 		}
+		if(left != null) dirty.add(left);
+		if(right != null) dirty.add(right);
+		updateMetaMove(m);
 		updateEndSpaces();
 		spacesLeft -= num;
 		if(spacesLeft == 0) finishGame();
@@ -118,66 +306,194 @@ class Game {
 		if(nonChains.isEmpty() && !isEndGame) isEndGame = true;
 	}
 	
+	//Takes back the most recent call to make(), restoring the board, the chains
+	//and their end spaces, the scores and the turn exactly as they were.
+	void unmake() {
+		if(history.isEmpty()) throw new IllegalStateException();
+		int tag;
+		while((tag = history.pop()) != UNDO_MAKE) {
+			switch(tag) {
+			case UNDO_CHAIN:
+				Chain c = (Chain) history.popRef();
+				markEnds(c);
+				c.restore(history, moves, spaces);
+				markEnds(c);
+				markMembers(c);
+				break;
+			case UNDO_CHAIN_ADDED:
+				Chain added = (Chain) history.popRef();
+				markEnds(added);
+				activeChains.remove(added);
+				if(history.pop() == 1) {
+					freeIds[numFreeIds++] = added.getId();
+				} else {
+					lastId--;
+				}
+				break;
+			case UNDO_CHAIN_REMOVED:
+				activeChains.add((Chain) history.popRef());
+				numFreeIds--;
+				break;
+			case UNDO_NONCHAIN:
+				Move n = getMove(history.pop());
+				n.setChain(null);
+				n.setLinks(null, null);
+				nonChains.add(n);
+				markSides(n);
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+		int flags = history.pop(), recent = history.pop(), turn = history.pop(), mover = history.pop();
+		Move m = getMove(history.pop());
+		Player p = players.get(mover);
+		Space left = m.getLeft(), right = m.getRight();
+		if(isFinished) unfinishGame();
+		board.unmake(m.getIndex());
+		if(costs != null) costs.refresh(m.getIndex());
+		if(eval != null) eval.unmake(m.getIndex());
+		if(left != null) {
+			if(left.isFull()) {
+				p.scoreDown();
+				spacesLeft++;
+			}
+			left.rankDown();
+			left.restore(m);
+		}
+		if(right != null) {
+			if(right.isFull()) {
+				p.scoreDown();
+				spacesLeft++;
+			}
+			right.rankDown();
+			right.restore(m);
+		}
+		m.makeAvailable();
+		m.setStrategized((flags & WAS_STRATEGIZED) != 0);
+		mostRecent = recent == -1 ? null : getMove(recent);
+		currentTurn = players.get(turn);
+		isEndGame = (flags & WAS_END_GAME) != 0;
+		if(left != null) dirty.add(left);
+		if(right != null) dirty.add(right);
+		updateEndSpaces();
+	}
+	
 	//Parses the user input and attempts to find the matching move. Returns null if the
 	//input string is invalid, otherwise returns the move.
 	Move retrieve(String name) {
-		Move m = legalMoves.get(name);
-		return m;
+		int split = name.indexOf(", ");
+		if(split == -1) return null;
+		String p1 = name.substring(0, split), p2 = name.substring(split + 2);
+		int d1 = firstDigit(p1), d2 = firstDigit(p2);
+		if(d1 == -1 || d2 == -1) return null;
+		try {
+			int r1 = Integer.parseInt(p1.substring(d1)) - 1, c1 = parseCol(p1.substring(0, d1)),
+				r2 = Integer.parseInt(p2.substring(d2)) - 1, c2 = parseCol(p2.substring(0, d2));
+			if(c1 == -1 || c2 == -1) return null;
+			return retrieve(r1, c1, r2, c2);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	//Returns the available move joining the points (r1, c1) and (r2, c2), in
+	//either order, or null if there is none.
+	Move retrieve(int r1, int c1, int r2, int c2) {
+		if(r1 == r2 && (c1 - c2 == 1 || c2 - c1 == 1)) {
+			return retrieve(r1, c1 < c2 ? c1 : c2, true);
+		} else if(c1 == c2 && (r1 - r2 == 1 || r2 - r1 == 1)) {
+			return retrieve(r1 < r2 ? r1 : r2, c1, false);
+		}
+		return null;
+	}
+	
+	//Returns the available move leaving the point at (row, col) to the right if
+	//horizontal or downward if not, or null if there is none.
+	Move retrieve(int row, int col, boolean horizontal) {
+		return retrieve(board.getEdge(row, col, horizontal));
+	}
+	
+	//Returns the available move with the given index, or null if there is none.
+	Move retrieve(int index) {
+		if(index < 0 || index >= moves.length || !board.isAvailable(index)) return null;
+		return getMove(index);
 	}
 	
 	boolean add(Player p) {
 		if(players.contains(p)) return false;
 		if(players.isEmpty()) currentTurn = p;
 		boolean b = players.add(p);
+		board.addPlayer();
 		assignColors();
+		//build what the CPU's moves use now, not during its first move
+		if(p.isCPU() && p.getDiff() == 5) {
+			getTable();
+			if(eval == null) eval = new PatternEvaluator(board, PatternEvaluator.DEFAULT_WEIGHTS);
+			setSearchThreads(SEARCH_THREADS);
+		}
+		if(p.isCPU() && (p.getDiff() <= 2 || p.getDiff() == 6) && costs == null) {
+			costs = new CostIndex(board);
+		}
 		return b;
 	}
 	
 	boolean remove(Player p) {
+		int i = players.indexOf(p);
+		if(i == -1) return false;
 		if(currentTurn == p) changeTurn();
+		board.removePlayer(i);
 		return players.remove(p);
 	}
 	
 	ArrayList<Move> analyze(int diff) {
+		return analyze(diff, System.nanoTime() + SEARCH_MILLIS * 1000000);
+	}
+	
+	//Lv 5-6 searches stop at the deadline, a value of System.nanoTime(), and
+	//play the best move found so far. Lv 3-4 and the endgame stop reading the
+	//chains at the deadline and decide from those read so far.
+	ArrayList<Move> analyze(int diff, long deadline) {
+		if(boardOnly && (diff < 5 || isEndGame)) throw new IllegalStateException();
 		ArrayList<Move> strategy = new ArrayList<>();
-		if(diff == 1 || diff == 2) {
-			ArrayList<Move> best = new ArrayList<>();
-			int mCost, minCost = Integer.MAX_VALUE;
-			for(Move m : legalMoves.values()) {
-				mCost = m.calculateBasicCost(diff);
-				if(mCost < minCost) {
-					minCost = mCost;
-					best.clear();
-					best.add(m);
-				} else if(mCost == minCost) {
-					best.add(m);
-				}
-			}
-			int b = best.size();
-			if(b > 1) {
-				if(seed == NO_SEED) {
-					strategy.add(best.get(new Random().nextInt(b)));
-				} else {
-					strategy.add(best.get(new Random(seed).nextInt(b)));
-				}
-			} else {
-				strategy.add(best.get(0));
+		if(diff >= 4 && isEndGame) {
+			//play the endgame exactly when it breaks down into simple chains
+			Move m = solveEndGame(deadline);
+			if(m != null) {
+				strategy.add(m);
+				return strategy;
 			}
+		}
+		if(diff == 1 || diff == 2) {
+			//a random edge among the cheapest
+			if(costs == null) costs = new CostIndex(board);
+			int minCost = costs.getMinCost(diff);
+			strategy.add(getMove(costs.pick(diff, random)));
 			if(minCost > 0 && !isEndGame) isEndGame = true;
 		} else if(diff == 3 || diff == 4) {
 			ArrayList<Chain> openChains = new ArrayList<>();
 			//if every move is in chains
 			if(isEndGame) {
-				//divide the chains into two lists--open and closed
-				ArrayList<Chain> closedChains = new ArrayList<>();
+				//list the open chains, and find the smallest closed chain, the
+				//smallest that is not a cycle and the largest, without sorting
+				//what may be many thousands of closed chains
+				Chain bestClosed = null, bestNonCycle = null, largest = null;
+				int seen = 0;
 				for(Chain c : activeChains) {
 					if(c.isOpen()) {
 						openChains.add(c);
 					} else {
-						closedChains.add(c);
+						int size = c.getNumMoves();
+						if(bestClosed == null || size < bestClosed.getNumMoves()) bestClosed = c;
+						if(!c.isCycle() && (bestNonCycle == null || size < bestNonCycle.getNumMoves())) {
+							bestNonCycle = c;
+						}
+						if(largest == null || size >= largest.getNumMoves()) largest = c;
 					}
+					//past the deadline, decide from the chains seen so far
+					if((++seen & CHAIN_CHECK_MASK) == 0 && isPast(deadline)) break;
 				}
-				//sort the lists by chain size in ascending order
+				//sort the open chains by size in ascending order
 				Comparator<Chain> comp = new Comparator<Chain>() {
 					@Override
 					public int compare(Chain c1, Chain c2) {
@@ -185,20 +501,13 @@ class Game {
 					}
 				};
 				Collections.sort(openChains, comp);
-				Collections.sort(closedChains, comp);
-				Chain bestClosed = null;
-				if(!closedChains.isEmpty()) {
-					bestClosed = closedChains.remove(0);
-				}
 				//if all chains are closed
 				if(openChains.isEmpty()) {
 					if(bestClosed == null) throw new IllegalStateException();
-					//open the smallest chain that is not a cycle
-					while(bestClosed.isCycle()) {
-						if(closedChains.isEmpty()) break;
-						bestClosed = closedChains.remove(0);
-					}
-					strategy.add(bestClosed.getMembers().get(0));
+					//open the smallest chain that is not a cycle, or the
+					//largest cycle if they all are
+					Chain c = bestNonCycle != null ? bestNonCycle : largest;
+					strategy.add(c.getMembers().get(0));
 				//if any chains are open
 				} else {
 					if(diff == 3) {
@@ -275,10 +584,12 @@ class Game {
 				}
 			} else {
 				//find the open chains
+				int seen = 0;
 				for(Chain c : activeChains) {
 					if(c.isOpen()) {
 						openChains.add(c);
 					}
+					if((++seen & CHAIN_CHECK_MASK) == 0 && isPast(deadline)) break;
 				}
 				//if there are any chains open, take every one of them
 				if(!openChains.isEmpty()) {
@@ -289,34 +600,107 @@ class Game {
 					}
 				} else {
 					//return a random nonchain move
-					int i;
-					if(seed == NO_SEED) {
-						i = new Random().nextInt(nonChains.size());
-					} else {
-						i = new Random(seed).nextInt(nonChains.size());
-					}
-					int j = 0;
-					for(Move m : nonChains) {
-						if(i == j++) {
-							strategy.add(m);
-						}
-					}
+					strategy.add(getMove(nonChains.pick(random)));
 				}
 			}
+		} else if(diff == 5) {
+			//small boards may have every position solved ahead of time
+			Tablebase tb = players.size() == 2 ? Tablebase.forSize(rows, cols) : null;
+			if(tb != null) {
+				strategy.add(getMove(tb.getBestEdge(board.getEdgeBits())));
+				return strategy;
+			}
+			Move m = probeBook();
+			if(m != null) {
+				strategy.add(m);
+				return strategy;
+			}
+			//search the position, keeping the table for the next move
+			Searcher.Limits limits = new Searcher.Limits(Long.MAX_VALUE, deadline);
+			int e = newSearcher().findMove(limits, Integer.MAX_VALUE);
+			if(e != -1) strategy.add(getMove(e));
+		} else if(diff == 6) {
+			Move m = probeBook();
+			if(m != null) {
+				strategy.add(m);
+				return strategy;
+			}
+			//random playouts on every core
+			if(costs == null) costs = new CostIndex(board);
+			MonteCarlo mc = new MonteCarlo(board, costs, forkRandom());
+			int e = mc.findMove(Long.MAX_VALUE, deadline);
+			playoutRate = mc.getPlayoutsPerSecond();
+			if(e != -1) strategy.add(getMove(e));
 		}
 		return strategy;
 	}
 
+	//Returns the move that did best in self-play from this position, or null
+	//if the opening book has none.
+	private Move probeBook() {
+		if(players.size() != 2) return null;
+		OpeningBook book = OpeningBook.forSize(rows, cols);
+		int e = book == null ? -1 : book.probe(board.getKey());
+		if(e >= 0 && e < moves.length && board.isAvailable(e)) return getMove(e);
+		return null;
+	}
+	
+	//Searches the position for whoever is to move only to fill the Lv 5
+	//table, so that a CPU's search after the next move starts with the
+	//replies already looked at. Runs until the deadline, a value of
+	//System.nanoTime(), or until the thread is interrupted.
+	void ponder(long deadline) {
+		Searcher.Limits limits = new Searcher.Limits(Long.MAX_VALUE, deadline);
+		newSearcher().findMove(limits, Integer.MAX_VALUE);
+	}
+	
+	//A Lv 5 search of the position, on the search threads if there are
+	//several.
+	private Searcher newSearcher() {
+		if(eval == null) eval = new PatternEvaluator(board, PatternEvaluator.DEFAULT_WEIGHTS);
+		return searchPool == null ? new Searcher(board, getTable(), eval) :
+				new ParallelSearcher(board, getTable(), eval, searchPool);
+	}
+	
+	private TranspositionTable getTable() {
+		if(table == null) table = new TranspositionTable(Searcher.TABLE_BITS);
+		return table;
+	}
+	
 	int getRows() { return rows; }
 	
 	int getCols() { return cols; }
 	
 	int getSpacesLeft() { return spacesLeft; }
 	
+	Board getBoard() { return board; }
+	
+	//64-bit Zobrist key of the drawn edges and the player to move
+	long getKey() { return board.getKey(); }
+	
+	long getKeyAfter(Move m) { return board.getKeyAfter(m.getIndex()); }
+	
 	Player getTurn() { return this.currentTurn; }
 	
 	ArrayList<Player> getPlayers() { return this.players; }
 	
+	//Splits each Lv 5 search across the given number of threads. With one
+	//thread the search runs on the caller's thread. Call between searches,
+	//since the threads of the old pool are stopped.
+	void setSearchThreads(int threads) {
+		if(threads < 1) throw new IllegalArgumentException();
+		int current = searchPool == null ? 1 : searchPool.getParallelism();
+		if(threads == current) return;
+		if(searchPool != null) searchPool.shutdown();
+		searchPool = threads == 1 ? null : new ForkJoinPool(threads);
+	}
+	
+	double getPlayoutRate() { return playoutRate; }
+	
+	//Forks a random stream from the game's own, for a search thread. A
+	//seeded game forks the same streams in the same order every run.
+	SplitMix64 forkRandom() { return random.split(); }
+	
 	boolean isEndGame() { return this.isEndGame; }
 	
 	void beginEndGame() { isEndGame = true; }
@@ -338,21 +722,23 @@ class Game {
 		String topline, midline1, midline2, midline3;
 		GameIterator iter = getIterator();
 		int index, width = cols;
-		char ch = 'A';
-		topline = "  " + Character.toString(ch++);
-		for(int c = 0; c < cols; c++) {
-			topline += "       " + Character.toString(ch++);
+		//row labels are padded to the widest one
+		int labelWidth = Integer.toString(rows + 1).length();
+		String margin = pad("", labelWidth - 1);
+		topline = pad("", labelWidth + 1) + colName(0);
+		for(int c = 1; c <= cols; c++) {
+			topline = pad(topline, labelWidth + 1 + 8 * c) + colName(c);
 		}
 		gamestate.add(topline);
 		int i = 0;
 		while(iter.hasNextSpace()) {
 			index = 0;
 			//far left side
-			topline = Character.toString((char)(++i+48)) + " +";
+			topline = pad(Integer.toString(++i), labelWidth) + " +";
 			Move left = iter.nextMove();
 			if(left.isAvailable()) {
 				if(debug && left.hasChain()) {
-					String cha = Character.toString(left.getChain().getIndex());
+					String cha = Character.toString(left.getChain().getLabel());
 					midline1 = "   "; midline2 = "  " + cha; midline3 = "   ";
 				} else {
 					midline1 = "   "; midline2 = "   "; midline3 = "   ";
@@ -364,6 +750,9 @@ class Game {
 					midline1 = "  |"; midline2 = "  |"; midline3 = "  |";
 				}
 			}
+			midline1 = margin + midline1;
+			midline2 = margin + midline2;
+			midline3 = margin + midline3;
 			//rest of row
 			while(index++ < width) {
 				Space s = iter.nextSpace();
@@ -380,7 +769,7 @@ class Game {
 				}
 				if(top.isAvailable()) {
 					if(debug && top.hasChain()) {
-						String cha = Character.toString(top.getChain().getIndex());
+						String cha = Character.toString(top.getChain().getLabel());
 						topline += "   " + cha + "   +";
 					} else {
 						topline += "       +";
@@ -394,7 +783,7 @@ class Game {
 				}
 				if(right.isAvailable()) {
 					if(debug && right.hasChain()) {
-						String cha = Character.toString(right.getChain().getIndex());
+						String cha = Character.toString(right.getChain().getLabel());
 						midline1 += " "; midline2 += cha; midline3 += " ";
 					} else {
 						midline1 += " "; midline2 += " "; midline3 += " ";
@@ -410,12 +799,12 @@ class Game {
 			gamestate.add(topline); gamestate.add(midline1); 
 			gamestate.add(midline2); gamestate.add(midline3);
 		}
-		String bottomline = Character.toString((char)(i+49)) + " +";
+		String bottomline = pad(Integer.toString(i + 1), labelWidth) + " +";
 		while(iter.hasNextMove()) {
 			Move bottom = iter.nextMove();
 			if(bottom.isAvailable()) {
 				if(debug && bottom.hasChain()) {
-					String cha = Character.toString(bottom.getChain().getIndex());
+					String cha = Character.toString(bottom.getChain().getLabel());
 					bottomline += "   " + cha + "   +";
 				} else {
 					bottomline += "       +";
@@ -453,134 +842,53 @@ class Game {
 		}
 		isFinished = true;
 	}
-
-	private void constructMoves() {
-		int index = rows*(cols+1) + cols*(rows+1) - 1;
-		String name = parse(rows, cols - 1, rows, cols);
-		nonmove = new Move("NONMOVE", -1, null);
-		Move next = new Move(name, index, nonmove);
-		legalMoves.put(name, next);
-		nonChains.add(next);
-		Move last = null;
-		while(next != null) {
-			last = next;
-			index--;
-			int p1r = name.charAt(1) - 49, p1c = name.charAt(0) - 65,
-					p2r = name.charAt(5) - 49, p2c = name.charAt(4) - 65;
-			if(index == -1) {
-				//have arrived at very first move, method is done
-				break;
-			}
-			//middle move
-			//if on bottom edge
-			if(p1r == rows && p2r == rows) {
-				//if at start of bottom edge
-				if(p1c == 0) {
-					//move to end of next row
-					//with last vertical move
-					name = parse(rows - 1, cols, rows, cols);
-				//if not at the end
-				} else {
-					//shift along
-					name = parse(rows, p1c - 1, rows, p2c - 1);
-				}
-			//if not on the bottom edge
-			} else {
-				//if vertical move
-				if(p1r != p2r) {
-					//if first move in the row
-					if(p1c == 0) {
-						//start the next row up
-						//with its last vertical move
-						name = parse(p1r - 1, cols, p2r - 1, cols);
-					//if not the first
-					} else {
-						//make the previous horizontal move
-						name = parse(p1r, p1c - 1, p2r - 1, p2c);
-					}
-				//if horizontal move
-				} else {
-					//shift to the previous vertical move
-					name = parse(p1r, p1c, p2r + 1, p2c - 1);
-				}
-			}
-			next = new Move(name, index, next);
-			legalMoves.put(name, next);
-			nonChains.add(next);
-		}
-		nonmove.setNext(last);
-	}
-	
-	private void constructSpaces() {
-		int index = rows * cols - 1;
-		String name = (rows - 1) + ", " + (cols - 1);
-		nonspace = new Space(-1, null);
-		Space next = new Space(index, nonspace);
-		Space last = null;
-		while(next != null) {
-			last = next;
-			index--;
-			int row = name.charAt(0) - 48,
-				col = name.charAt(3) - 48;
-			if(index == -1) {
-				//first space, method is done
-				break;
-			}
-			//middle spaces
-			col--;
-			if(col == -1) {
-				row--;
-				col = cols - 1;
-			}
-			if(row == -1) row = 0;
-			name = "" + row + ", " + col;
-			next = new Space(index, next);
+	
+	private void unfinishGame() {
+		for(Player w: winners) {
+			w.winsDown();
 		}
-		nonspace.setNext(last);
+		winners.clear();
+		isFinished = false;
+	}
+
+	//Names a point by its column in letters (A-Z, then AA-AZ, and so on) and
+	//its row as a number counting from 1. Used only for display and user input.
+	static String pointName(int row, int col) {
+		return colName(col) + (row + 1);
 	}
 	
-	private String parse(int p1r, int p1c, int p2r, int p2c) {
-		char r1 = (char)(p1r + 48 + 1), r2 = (char)(p2r + 48 + 1);
-		char c1 = (char)(p1c + 65), c2 = (char)(p2c + 65);
-		return  Character.toString(c1) + Character.toString(r1) + ", " +
-				Character.toString(c2) + Character.toString(r2);
+	static String colName(int col) {
+		String name = "";
+		for(col++; col > 0; col = (col - 1) / 26) {
+			name = (char)('A' + (col - 1) % 26) + name;
+		}
+		return name;
 	}
 	
-	private void connectMovesToSpaces() {
-		GameIterator iter = getIterator();
-		GameIterator shift = getIterator();
-		for(int i = 0; i < cols; i++) {
-			shift.nextMove();
-			shift.nextMove();
+	//Reverses colName(), returning -1 if the name is not all capital letters.
+	static int parseCol(String name) {
+		if(name.isEmpty()) return -1;
+		int col = 0;
+		for(int i = 0; i < name.length(); i++) {
+			char ch = name.charAt(i);
+			if(ch < 'A' || ch > 'Z' || col > (Integer.MAX_VALUE - 26) / 26) return -1;
+			col = col * 26 + (ch - 'A' + 1);
 		}
-		shift.nextMove();
-		//next move on shift is bottom of first space
-		while(iter.hasNextSpace()) {
-			Space s = iter.nextSpace();
-			Move left = iter.nextMove();
-			Move top = iter.nextMove();
-			Move right = iter.nextMove();
-			if(!shift.isOnLastRow()) shift.nextMove();
-			Move bottom = shift.nextMove();
-			//move to the next bottom
-			if(!shift.isOnLastRow()) shift.nextMove();
-			left.setRight(s); s.add(left);
-			top.setRight(s); s.add(top);
-			right.setLeft(s); s.add(right);
-			bottom.setLeft(s); s.add(bottom);
-			for(int i = 0; i < cols - 1; i++) {
-				s = iter.nextSpace();
-				left = right;
-				top = iter.nextMove();
-				right = iter.nextMove();
-				bottom = shift.nextMove();
-				if(!shift.isOnLastRow()) shift.nextMove();
-				left.setRight(s); s.add(left);
-				top.setRight(s); s.add(top);
-				right.setLeft(s); s.add(right);
-				bottom.setLeft(s); s.add(bottom);
-			}
+		return col - 1;
+	}
+	
+	//Appends spaces to a line until it reaches the given length.
+	private static String pad(String line, int length) {
+		StringBuilder sb = new StringBuilder(line);
+		while(sb.length() < length) sb.append(' ');
+		return sb.toString();
+	}
+	
+	private static int firstDigit(String point) {
+		for(int i = 0; i < point.length(); i++) {
+			if(Character.isDigit(point.charAt(i))) return i;
 		}
+		return -1;
 	}
 	
 	private void changeTurn() {
@@ -591,129 +899,391 @@ class Game {
 	
 	private void buildChain(Space s) {
 		Chain c;
-		ArrayList<Move> moves = s.getUnmadeMoves();
-		Move m1 = moves.get(0), m2 = moves.get(1);
+		Move m1 = s.getUnmade(0), m2 = s.getUnmade(1);
 		if(!m1.hasChain() && !m2.hasChain()) {
 			//if both moves are nonChains, construct a new chain
-			c = new Chain(m1, m2);
-			m1.setChain(c); m2.setChain(c);
-			nonChains.remove(m1); nonChains.remove(m2);
+			boolean reused = numFreeIds > 0;
+			c = new Chain(reused ? freeIds[--numFreeIds] : ++lastId, m1, m2);
+			c.setStamp(stamp);
+			touched.add(c);
+			removeNonChain(m1); removeNonChain(m2);
 			activeChains.add(c);
+			history.pushRef(c);
+			history.push(reused ? 1 : 0);
+			history.push(UNDO_CHAIN_ADDED);
 		} else if(m1.hasChain() && !m2.hasChain()) {
 			//if only m2 is nonChain, add m2 to m1's chain
 			c = m1.getChain();
+			save(c);
 			if(m1 == c.getLastMove()) {
 				c.putAtEnd(m2);
 			} else {
 				c.putAtBeginning(m2);
 			}
-			m2.setChain(c);
-			nonChains.remove(m2);
+			removeNonChain(m2);
 		} else if(!m1.hasChain() && m2.hasChain()) {
 			//if only m1 is nonChain, add m1 to m2's chain
 			c = m2.getChain();
+			save(c);
 			if(m2 == c.getLastMove()) {
 				c.putAtEnd(m1);
 			} else {
 				c.putAtBeginning(m1);
 			}
-			m1.setChain(c);
-			nonChains.remove(m1);
+			removeNonChain(m1);
 		} else {
 			//if both are chains
 			c = m1.getChain();
 			Chain d = m2.getChain();
 			if(c == d) return;	//chains are already one
+			save(c);
+			save(d);
 			if(c.getLastMove() == m1 && d.getLastMove() != m2) {	
 				//if c is facing forward and d is facing forward,
-				//let c absorb d
-				c.absorb(d);
-				for(Move m : d.getMembers()) {
-					m.setChain(c);
-				}
-				activeChains.remove(d);
+				//put d after c
+				join(c, d);
 			} else if(c.getLastMove() != m1 && d.getLastMove() == m2) {
 				//if c is facing backward and d is facing backward,
-				//let d absorb c
-				d.absorb(c);
-				for(Move m : c.getMembers()) {
-					m.setChain(d);
-				}
-				activeChains.remove(c);
+				//put c after d
+				join(d, c);
 			} else if(c.getLastMove() == m1 && d.getLastMove() == m2){
 				//if they are facing toward each other, invert d,
-				//and let c absorb d
+				//and put d after c
 				d.invert();
-				c.absorb(d);
-				for(Move m : d.getMembers()) {
-					m.setChain(c);
-				}
-				activeChains.remove(d);
+				join(c, d);
 			} else {
 				//if they are facing away from each other, invert c and
-				//let c absorb d
+				//put d after c
 				c.invert();
-				c.absorb(d);
-				for(Move m : d.getMembers()) {
-					m.setChain(c);
-				}
-				activeChains.remove(d);
+				join(c, d);
 			}
 		}
-		//re-index the chains starting from 1
-		char index = 48;
-		for(Chain e : activeChains) {
-			e.setIndex(++index);
+	}
+	
+	//Joins chain y onto the end of chain x, which absorbs it and keeps its id.
+	private void join(Chain x, Chain y) {
+		markMembers(y);
+		x.absorb(y);
+		dropChain(y);
+	}
+	
+	//Removes an emptied or absorbed chain, freeing its id for the next new chain.
+	private void dropChain(Chain c) {
+		activeChains.remove(c);
+		if(numFreeIds == freeIds.length) freeIds = Arrays.copyOf(freeIds, 2 * numFreeIds);
+		freeIds[numFreeIds++] = c.getId();
+		history.pushRef(c);
+		history.push(UNDO_CHAIN_REMOVED);
+	}
+	
+	//Records the state of a chain before its first change in this call to
+	//make(), so unmake() can put it back.
+	private void save(Chain c) {
+		if(c.getStamp() == stamp) return;
+		c.setStamp(stamp);
+		touched.add(c);
+		markEnds(c);
+		c.save(history);
+		history.pushRef(c);
+		history.push(UNDO_CHAIN);
+	}
+	
+	private void removeNonChain(Move m) {
+		if(nonChains.remove(m)) {
+			markSides(m);
+			history.push(m.getIndex());
+			history.push(UNDO_NONCHAIN);
 		}
 	}
 	
+	//Brings the end spaces and mergers/blockers up to date after a change to the
+	//chains. Only the spaces marked dirty (the ends of every chain touched, before
+	//and after, the spaces beside the move and beside every move that changed
+	//chain) can have changed, and only the moves around them can have changed
+	//status.
 	private void updateEndSpaces() {
-		endSpaces.clear();
-		sharedEndSpaces.clear();
+		for(int i = 0; i < touched.size(); i++) {
+			markEnds(touched.get(i));
+		}
+		touched.clear();
+		for(int i = 0; i < dirty.size(); i++) {
+			updateEndSpace(dirty.get(i));
+		}
+		for(int i = 0; i < dirty.size(); i++) {
+			Space s = dirty.get(i);
+			for(int j = 0; j < 4; j++) {
+				Move m = s.getSide(j);
+				if(m.isAvailable()) updateMetaMove(m);
+			}
+		}
+		dirty.clear();
+		if(seed != NO_SEED) checkEndSpaces();
+	}
+	
+	private void markEnds(Chain c) {
+		ArrayList<Space> ends = c.getEnds();
+		for(int i = 0; i < ends.size(); i++) {
+			dirty.add(ends.get(i));
+		}
+	}
+	
+	//A chain taken out in the middle keeps its members in capture order rather
+	//than board order, so a space beside a move that joins or leaves a chain
+	//need not be one of its ends. Mark both sides of such moves.
+	private void markSides(Move m) {
+		if(m.getLeft() != null) dirty.add(m.getLeft());
+		if(m.getRight() != null) dirty.add(m.getRight());
+	}
+	
+	private void markMembers(Chain c) {
+		for(Move m = c.getFirstMove(), prev = null, next; m != null; prev = m, m = next) {
+			next = m.getLink(prev);
+			markSides(m);
+		}
+	}
+	
+	//A space is an end space if it ends any chain running through its moves,
+	//and a shared end space if it ends more than one.
+	private void updateEndSpace(Space s) {
+		Chain first = null;
+		boolean shared = false;
+		for(int i = 0; i < 4; i++) {
+			Chain c = s.getSide(i).getChain();
+			if(c == null || !c.hasEndSpace(s)) continue;
+			if(first == null) {
+				first = c;
+			} else if(c != first) {
+				shared = true;
+			}
+		}
+		if(first == null) {
+			endSpaces.remove(s);
+		} else {
+			endSpaces.add(s);
+		}
+		if(shared) {
+			sharedEndSpaces.add(s);
+		} else {
+			sharedEndSpaces.remove(s);
+		}
+	}
+	
+	//A move beside an end space of rank 1 merges the chains of the space's other
+	//two moves if they differ, and blocks their chain if they are the same.
+	private void updateMetaMove(Move m) {
+		boolean merger = false, blocker = false;
+		if(m.isAvailable()) {
+			for(int side = 0; side < 2; side++) {
+				Space s = side == 0 ? m.getLeft() : m.getRight();
+				if(s == null || s.getRank() != 1 || !endSpaces.contains(s)) continue;
+				//find the chains of the two other moves
+				Chain c1 = null, c2 = null;
+				boolean first = true;
+				for(int i = 0; i < 3; i++) {
+					Move other = s.getUnmade(i);
+					if(other == m) continue;
+					if(first) {
+						c1 = other.getChain();
+						first = false;
+					} else {
+						c2 = other.getChain();
+					}
+				}
+				if(c1 != null && c2 != null) {
+					if(c1 != c2) {
+						merger = true;
+					} else {
+						blocker = true;
+					}
+				}
+			}
+		}
+		if(merger) {
+			mergers.add(m);
+		} else {
+			mergers.remove(m);
+		}
+		if(blocker) {
+			blockers.add(m);
+		} else {
+			blockers.remove(m);
+		}
+	}
+	
+	//DEBUG MODE
+	//Rebuilds the end spaces and mergers/blockers from every chain and checks
+	//the incremental sets against them.
+	private void checkEndSpaces() {
+		HashSet<Space> allEnds = new HashSet<>(), allShared = new HashSet<>();
+		HashSet<Move> allMergers = new HashSet<>(), allBlockers = new HashSet<>();
 		ArrayList<Space> ends;
 		for(Chain c : activeChains) {
 			ends = c.getEnds();
 			for(Space s : ends) {
-				if(!endSpaces.add(s)) {
-					sharedEndSpaces.add(s);
+				if(!allEnds.add(s)) {
+					allShared.add(s);
 				}
 			}
 		}
-		updateMetaMoves();
-	}
-	
-	private void updateMetaMoves() {
-		mergers.clear();
-		blockers.clear();
-		for(Space s : endSpaces) {
+		for(Space s : allEnds) {
 			if(s.getRank() == 1) {
-				ArrayList<Move> moves = s.getUnmadeMoves();
-				Move m1 = moves.get(0); Chain c1 = m1.getChain();
-				Move m2 = moves.get(1); Chain c2 = m2.getChain();
-				Move m3 = moves.get(2); Chain c3 = m3.getChain();
+				Move m1 = s.getUnmade(0); Chain c1 = m1.getChain();
+				Move m2 = s.getUnmade(1); Chain c2 = m2.getChain();
+				Move m3 = s.getUnmade(2); Chain c3 = m3.getChain();
 				if(c2 != null && c3 != null) {
-					if(m2.getChain() != m3.getChain()) {
-						mergers.add(m1);
+					if(c2 != c3) {
+						allMergers.add(m1);
 					} else {
-						blockers.add(m1);
+						allBlockers.add(m1);
 					}
 				}
 				if(c1 != null && c3 != null) {
-					if(m1.getChain() != m3.getChain()) {
-						mergers.add(m2);
+					if(c1 != c3) {
+						allMergers.add(m2);
 					} else {
-						blockers.add(m2);
+						allBlockers.add(m2);
 					}
 				}
 				if(c1 != null && c2 != null) {
-					if(m1.getChain() != m2.getChain()) {
-						mergers.add(m3);
+					if(c1 != c2) {
+						allMergers.add(m3);
 					} else {
-						blockers.add(m3);
+						allBlockers.add(m3);
+					}
+				}
+			}
+		}
+		if(!allEnds.equals(endSpaces) || !allShared.equals(sharedEndSpaces) ||
+				!allMergers.equals(mergers) || !allBlockers.equals(blockers)) {
+			throw new IllegalStateException("end spaces out of date");
+		}
+	}
+	
+	//Lv 4-6 endgame. When there are two players and every chain is a string of
+	//boxes that ends at the border or at a box that can be taken, returns the
+	//move that wins the most boxes, using EndgameSolver for the chains that
+	//are still closed. Returns null for any other position, or if the
+	//deadline passes while the chains are read.
+	private Move solveEndGame(long deadline) {
+		if(players.size() != 2 || !nonChains.isEmpty() || activeChains.isEmpty()) return null;
+		int n = activeChains.size();
+		int[] chainLengths = new int[n], cycleLengths = new int[n];
+		Chain[] chains = new Chain[n], cycles = new Chain[n];
+		int numChains = 0, numCycles = 0;
+		ArrayList<Chain> open = new ArrayList<>();
+		int taken = 0;
+		Chain control = null;
+		int controlCost = Integer.MAX_VALUE, controlLength = 0;
+		HashSet<Space> boxes = new HashSet<>();
+		int seen = 0;
+		for(Chain c : activeChains) {
+			if((++seen & CHAIN_CHECK_MASK) == 0 && isPast(deadline)) return null;
+			boxes.clear();
+			int threes = 0, grounds = 0;
+			ArrayList<Move> members = c.getMembers();
+			for(Move m : members) {
+				for(int side = 0; side < 2; side++) {
+					Space s = side == 0 ? m.getLeft() : m.getRight();
+					if(s == null) {
+						grounds++;
+					} else if(boxes.add(s)) {
+						if(s.getRank() < 2) return null;
+						if(s.getRank() == 3) threes++;
 					}
 				}
 			}
+			int length = boxes.size();
+			if(threes == 0) {
+				if(c.isCycle() && length == members.size()) {
+					cycles[numCycles] = c;
+					cycleLengths[numCycles++] = length;
+				} else if(!c.isCycle() && grounds == 2 && length == members.size() - 1) {
+					chains[numChains] = c;
+					chainLengths[numChains++] = length;
+				} else {
+					return null;
+				}
+			} else {
+				open.add(c);
+				taken += length;
+				//a string from a box that can be taken to the border can be
+				//declined by leaving two boxes, and one between two such boxes
+				//by leaving four
+				int cost = 0;
+				if(threes == 1 && grounds == 1 && length == members.size() && length >= 2) {
+					cost = 4;
+				} else if(threes == 2 && grounds == 0 && length == members.size() + 1 && length >= 4) {
+					cost = 8;
+				}
+				if(cost != 0 && cost < controlCost) {
+					control = c;
+					controlCost = cost;
+					controlLength = length;
+				}
+			}
+		}
+		chainLengths = Arrays.copyOf(chainLengths, numChains);
+		cycleLengths = Arrays.copyOf(cycleLengths, numCycles);
+		if(!EndgameSolver.isSmall(chainLengths, cycleLengths)) return null;
+		int rest = EndgameSolver.value(chainLengths, cycleLengths);
+		if(open.isEmpty()) {
+			//open the chain or cycle that costs the least
+			Chain best = null;
+			int bestValue = Integer.MIN_VALUE;
+			for(int i = 0; i < numChains + numCycles; i++) {
+				boolean cycle = i >= numChains;
+				int j = cycle ? i - numChains : i;
+				int[] others = cycle ? cycleLengths : chainLengths;
+				int[] without = new int[others.length - 1];
+				System.arraycopy(others, 0, without, 0, j);
+				System.arraycopy(others, j + 1, without, j, others.length - j - 1);
+				int v = EndgameSolver.openValue(others[j], cycle,
+						cycle ? EndgameSolver.value(chainLengths, without) :
+							EndgameSolver.value(without, cycleLengths));
+				if(v > bestValue) {
+					bestValue = v;
+					best = cycle ? cycles[j] : chains[j];
+				}
+			}
+			if(!best.isCycle() && best.getNumMoves() == 3) {
+				//the middle move leaves two boxes that cannot be declined
+				return best.getMembers().get(1);
+			}
+			return best.getFirstMove();
+		}
+		//take everything, unless handing back the end of one string keeps
+		//control of the closed chains
+		if(control == null || taken - controlCost - rest <= taken + rest) {
+			return captureIn(open.get(0));
+		}
+		for(Chain c : open) {
+			if(c != control) return captureIn(c);
 		}
+		if(controlLength > controlCost / 2) return captureIn(control);
+		//decline the last boxes with the move that completes none of them
+		for(Move m : control.getMembers()) {
+			if(!isCapture(m) && (controlCost == 8 || m.getLeft() == null || m.getRight() == null)) {
+				return m;
+			}
+		}
+		return null;
+	}
+	
+	//Whether the deadline, a value of System.nanoTime(), has passed.
+	private static boolean isPast(long deadline) {
+		return System.nanoTime() - deadline > 0;
+	}
+	
+	private Move captureIn(Chain c) {
+		for(Move m : c.getMembers()) {
+			if(isCapture(m)) return m;
+		}
+		throw new IllegalStateException();
+	}
+	
+	private static boolean isCapture(Move m) {
+		return (m.getLeft() != null && m.getLeft().getRank() == 3) ||
+				(m.getRight() != null && m.getRight().getRank() == 3);
 	}
 	
 	private void assignColors() {
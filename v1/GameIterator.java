@@ -1,45 +1,43 @@
 package jtjudge.Boxes.v1;
 
+//Walks the moves and spaces of a game in index order, which is the order they
+//are drawn in row by row.
 class GameIterator {
 
-	private Move nonmove, nextmove, lastmove;
-	private Space nonspace, nextspace, lastspace;
+	private final Game game;
+	private final int numMoves, numSpaces;
+	private int nextmove, nextspace;
 	private int rows, cols;
 	
-	GameIterator(Move nonmove, Space nonspace, int rows, int cols) {
-		this.nonmove = nonmove;
-		this.nonspace = nonspace;
-		lastmove = nonmove;
-		lastspace = nonspace;
-		nextmove = lastmove.getNext();
-		nextspace = lastspace.getNext();
+	GameIterator(Game game, int rows, int cols) {
+		this.game = game;
+		numMoves = rows * (cols + 1) + cols * (rows + 1);
+		numSpaces = rows * cols;
+		nextmove = 0;
+		nextspace = 0;
 		this.rows = rows;
 		this.cols = cols;
 	}
 
 	boolean hasNextMove() {
-		return nextmove != nonmove;
+		return nextmove < numMoves;
 	}
 	
 	Move nextMove() {
-		lastmove = nextmove;
-		nextmove = nextmove.getNext();
-		return lastmove;
+		return game.getMove(nextmove++);
 	}
 	
 	boolean isOnLastRow() {
-		return nextmove.getIndex() + cols >=
+		return nextmove + cols >=
 				(rows+1)*cols + (cols+1)*rows;
 	}
 
 	boolean hasNextSpace() {
-		return nextspace != nonspace;
+		return nextspace < numSpaces;
 	}
 
 	Space nextSpace() {
-		lastspace = nextspace;
-		nextspace = nextspace.getNext();
-		return lastspace;
+		return game.getSpace(nextspace++);
 	}
 	
 	@Override
@@ -0,0 +1,340 @@
+package jtjudge.Boxes.v1;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Monte Carlo tree search for the Level 6 CPU. Each worker grows its own UCT
+//tree from a private copy of the Board (root parallelism), and the visits of
+//the root moves are summed at the end. Playouts draw a random move among those
+//with the lowest basic cost, the same rule as Level 2, from a CostIndex kept
+//up to date as they go, so a move costs the same whatever the size of the
+//board.
+class MonteCarlo {
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	//shared by every game, so threads are only started once
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS,
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "MonteCarlo");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	//the deadline is checked every CHECK_MASK + 1 moves of a playout
+	private static final int CHECK_MASK = 63;
+
+	//scratch space of each pool thread, kept between searches of the same size
+	//unless memory runs short, since on a big board making it anew for every
+	//move keeps the collector busy
+	private static final ThreadLocal<SoftReference<Buffers>> BUFFERS = new ThreadLocal<>();
+
+	private final Board root;
+	private final CostIndex rootCosts;
+	private final SplitMix64 random;
+	private long playouts;
+	private long nanos;
+
+	//Searches the root board, whose edges the given index must be up to date
+	//with.
+	MonteCarlo(Board root, CostIndex rootCosts, SplitMix64 random) {
+		if(rootCosts == null) throw new NullPointerException();
+		this.root = root;
+		this.rootCosts = rootCosts;
+		this.random = random;
+	}
+
+	//Runs playouts on every core until either limit is reached and returns the
+	//most visited edge, or -1 if the board is full. The deadline is a value of
+	//System.nanoTime(), and a playout still running then is dropped. If no
+	//playout finished, an edge is picked as Level 2 would.
+	int findMove(long playoutLimit, final long deadline) {
+		if(root.nextAvailable(0) == -1) return -1;
+		long start = System.nanoTime();
+		final AtomicLong budget = new AtomicLong(playoutLimit);
+		ArrayList<Future<Node>> results = new ArrayList<>();
+		for(int i = 0; i < THREADS; i++) {
+			final SplitMix64 stream = random.split();
+			results.add(POOL.submit(new Callable<Node>() {
+				@Override
+				public Node call() {
+					return new Worker(buffersFor(root, rootCosts), stream).run(budget, deadline);
+				}
+			}));
+		}
+		//visits of each root move over every worker
+		HashMap<Integer, Integer> visits = new HashMap<>();
+		playouts = 0;
+		try {
+			for(Future<Node> f : results) {
+				Node n = f.get();
+				playouts += n.visits;
+				for(int i = 0; i < n.numChildren; i++) {
+					Node c = n.children[i];
+					Integer v = visits.get(c.edge);
+					visits.put(c.edge, v == null ? c.visits : v + c.visits);
+				}
+			}
+		} catch (InterruptedException e) {
+			//stop the workers and play the best move so far
+			budget.set(0);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		nanos = System.nanoTime() - start;
+		if(playouts == 0) return rootCosts.pick(2, random);
+		//the lowest edge among the most visited
+		int best = -1, bestVisits = -1;
+		for(Map.Entry<Integer, Integer> v : visits.entrySet()) {
+			int e = v.getKey();
+			if(v.getValue() > bestVisits || (v.getValue() == bestVisits && e < best)) {
+				best = e;
+				bestVisits = v.getValue();
+			}
+		}
+		return best;
+	}
+
+	//The calling pool thread's buffers, holding a copy of the root board and
+	//its index.
+	private static Buffers buffersFor(Board root, CostIndex rootCosts) {
+		SoftReference<Buffers> ref = BUFFERS.get();
+		Buffers b = ref == null ? null : ref.get();
+		if(b == null || b.board.getRows() != root.getRows() || b.board.getCols() != root.getCols()) {
+			b = new Buffers(root, rootCosts);
+			BUFFERS.set(new SoftReference<>(b));
+		} else {
+			b.board.copy(root);
+			b.costs.copy(rootCosts);
+		}
+		return b;
+	}
+
+	long getPlayouts() { return playouts; }
+
+	double getPlayoutsPerSecond() {
+		return nanos == 0 ? 0 : playouts * 1e9 / nanos;
+	}
+
+	//A position in one worker's tree, reached by drawing edge for mover.
+	//Only the best class of move is tried: captures if there are any,
+	//otherwise edges that leave no box at rank 3, otherwise every edge. The
+	//untried moves are not listed; a new child is drawn from the class at
+	//random among the edges that are not children yet.
+	private static class Node {
+
+		final int edge;
+		final int mover;
+		int visits;
+		double wins;		//results for the mover, 1 for a win and 1/2 for a tie
+		Node[] children;
+		int numChildren;
+		final int groups;	//of the CostIndex the class of moves is made of
+		final int numMoves;	//in the class
+
+		//The index must be up to date with the position.
+		Node(int edge, int mover, CostIndex costs) {
+			this.edge = edge;
+			this.mover = mover;
+			int groups = CostIndex.CAPTURES, numMoves = costs.count(groups);
+			if(numMoves == 0) {
+				groups = CostIndex.SAFE;
+				numMoves = costs.count(groups);
+			}
+			if(numMoves == 0) {
+				groups = ~0;
+				numMoves = costs.count(groups);
+			}
+			this.groups = groups;
+			this.numMoves = numMoves;
+			children = new Node[Math.min(numMoves, 4)];
+		}
+
+		boolean isExpanded() { return numChildren == numMoves; }
+
+		//Adds a child for a move of the class that is not one yet. The index
+		//must be up to date with this position.
+		int pickUntried(CostIndex costs, SplitMix64 random) {
+			while(true) {
+				int e = costs.pickFrom(groups, random);
+				int i = 0;
+				while(i < numChildren && children[i].edge != e) i++;
+				if(i == numChildren) return e;
+			}
+		}
+
+		void add(Node child) {
+			if(numChildren == children.length) {
+				children = Arrays.copyOf(children, Math.min(numMoves, 2 * numChildren));
+			}
+			children[numChildren++] = child;
+		}
+
+		Node select() {
+			double logVisits = Math.log(visits);
+			Node best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < numChildren; i++) {
+				Node c = children[i];
+				double score = c.wins / c.visits + EXPLORATION * Math.sqrt(logVisits / c.visits);
+				if(score > bestScore) {
+					bestScore = score;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+	}
+
+	//board, index, trail and path of a worker, kept by the pool thread it
+	//runs on
+	private static class Buffers {
+
+		final Board board;
+		final CostIndex costs;
+		int[] trail = new int[64];
+		Node[] path = new Node[16];
+
+		Buffers(Board root, CostIndex rootCosts) {
+			board = new Board(root.getRows(), root.getCols());
+			board.copy(root);
+			costs = new CostIndex(board, rootCosts);
+		}
+
+	}
+
+	private static class Worker {
+
+		private final Board board;
+		private final CostIndex costs;
+		private final SplitMix64 random;
+		private final Buffers buffers;
+		private int[] trail;		//edges drawn since the root
+		private Node[] path;		//nodes from the root to the current one
+		private final double[] results;
+
+		Worker(Buffers buffers, SplitMix64 random) {
+			board = buffers.board;
+			costs = buffers.costs;
+			this.random = random;
+			this.buffers = buffers;
+			trail = buffers.trail;
+			path = buffers.path;
+			results = new double[board.getNumPlayers()];
+		}
+
+		Node run(AtomicLong budget, long deadline) {
+			Node top = new Node(-1, -1, costs);
+			while(System.nanoTime() - deadline < 0 && budget.getAndDecrement() > 0) {
+				int depth = 0, made = 0;
+				Node n = top;
+				visit(depth++, n);
+				//descend through fully expanded nodes
+				while(n.isExpanded() && n.numChildren > 0) {
+					n = n.select();
+					made = make(made, n.edge);
+					visit(depth++, n);
+				}
+				//add one child
+				if(!n.isExpanded()) {
+					int e = n.pickUntried(costs, random);
+					int mover = board.getTurn();
+					made = make(made, e);
+					Node child = new Node(e, mover, costs);
+					n.add(child);
+					n = child;
+					visit(depth++, n);
+				}
+				made = playout(made, deadline);
+				if(made < 0) break;
+				score();
+				for(int i = 0; i < depth; i++) {
+					Node p = path[i];
+					p.visits++;
+					if(p.mover >= 0) p.wins += results[p.mover];
+				}
+				if(!undo(made, deadline)) break;
+			}
+			Arrays.fill(path, null);	//let the tree go with the search
+			buffers.trail = trail;
+			buffers.path = path;
+			return top;
+		}
+
+		//Plays to the end, each move chosen at random among those of the
+		//lowest basic cost. Returns the new length of the trail, or -1 if the
+		//deadline passed first, leaving the board where the playout stopped.
+		private int playout(int made, long deadline) {
+			while(!board.isFinished()) {
+				if((made & CHECK_MASK) == 0 && System.nanoTime() - deadline > 0) return -1;
+				made = make(made, costs.pick(2, random));
+			}
+			return made;
+		}
+
+		//Takes back the trail of length made, returning false if the deadline
+		//passed first. The board is copied afresh for every search, so it may
+		//be left where this stopped.
+		private boolean undo(int made, long deadline) {
+			while(made > 0) {
+				if((made & CHECK_MASK) == 0 && System.nanoTime() - deadline > 0) return false;
+				unmake(trail[--made]);
+			}
+			return true;
+		}
+
+		//Draws edge e and adds it to the trail of length made, returning the
+		//new length.
+		private int make(int made, int e) {
+			board.make(e);
+			costs.refresh(e);
+			if(made == trail.length) trail = Arrays.copyOf(trail, 2 * made);
+			trail[made] = e;
+			return made + 1;
+		}
+
+		private void unmake(int e) {
+			board.unmake(e);
+			costs.refresh(e);
+		}
+
+		private void visit(int depth, Node n) {
+			if(depth == path.length) path = Arrays.copyOf(path, 2 * depth);
+			path[depth] = n;
+		}
+
+		private void score() {
+			int max = Integer.MIN_VALUE, numMax = 0;
+			for(int p = 0; p < results.length; p++) {
+				int s = board.getScore(p);
+				if(s > max) {
+					max = s;
+					numMax = 1;
+				} else if(s == max) {
+					numMax++;
+				}
+			}
+			for(int p = 0; p < results.length; p++) {
+				results[p] = board.getScore(p) == max ? (numMax == 1 ? 1 : 0.5) : 0;
+			}
+		}
+
+	}
+
+}
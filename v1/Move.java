@@ -2,27 +2,31 @@ package jtjudge.Boxes.v1;
 
 class Move {
 
-	private final String name;
 	private final int index;
+	private final int row, col;	//point the move starts from
+	private final boolean horizontal;	//leaves to the right, or else downward
 	private boolean isAvailable;
 	private boolean isStrategized;
 	private int hashcode;	//cached after first call to hashCode()
 	
 	private Space left, right;
 	private Chain chain;
-	private Move next;
+	
+	//neighbours within the chain, in either order; maintained by Chain
+	private Move linkA, linkB;
 
-	Move(String name, int index, Move next) {
-		this.name = name;
+	Move(int index, int row, int col, boolean horizontal) {
 		this.index = index;
+		this.row = row;
+		this.col = col;
+		this.horizontal = horizontal;
 		this.isAvailable = true;
 		this.isStrategized = false;
 		this.hashcode = 0;
-		this.next = next;
 	}
 
 	int calculateBasicCost(int diff) {
-		int cost = 0, lrank, rrank;
+		int lrank, rrank;
 		if(this.left == null) {
 			lrank = 0;
 		} else {
@@ -33,6 +37,13 @@ class Move {
 		} else {
 			rrank = this.right.getRank();
 		}
+		return basicCost(lrank, rrank, diff);
+	}
+
+	//Cost of a move whose adjacent spaces have the given ranks. Shared with the
+	//precomputed cost table in Board.
+	static int basicCost(int lrank, int rrank, int diff) {
+		int cost = 0;
 		if(diff == 1) {
 			if(lrank == 3 || rrank == 3) cost--;
 		}
@@ -59,9 +70,11 @@ class Move {
 
 	int getIndex() { return this.index; }
 	
-	Move getNext() { return this.next; }
+	int getRow() { return this.row; }
+	
+	int getCol() { return this.col; }
 	
-	void setNext(Move m) { this.next = m; }
+	boolean isHorizontal() { return this.horizontal; }
 	
 	Space getLeft() { return this.left; }
 	
@@ -76,8 +89,12 @@ class Move {
 	void makeUnavailable() {
 		this.isAvailable = false;
 		this.chain = null;
+		this.linkA = null;
+		this.linkB = null;
 	}
 	
+	void makeAvailable() { this.isAvailable = true; }
+	
 	boolean isStrategized() { return this.isStrategized; }
 	
 	void setStrategized(boolean set) { this.isStrategized = set; }
@@ -87,6 +104,27 @@ class Move {
 	Chain getChain() { return this.chain; }
 	
 	void setChain(Chain c) { this.chain = c; }
+	
+	Move getLinkA() { return this.linkA; }
+	
+	Move getLinkB() { return this.linkB; }
+	
+	//Returns the neighbour in the chain other than the given one. Passing null
+	//at either end of a chain gives the only neighbour.
+	Move getLink(Move from) { return this.linkA == from ? this.linkB : this.linkA; }
+	
+	void setLinks(Move a, Move b) {
+		this.linkA = a;
+		this.linkB = b;
+	}
+	
+	void replaceLink(Move from, Move to) {
+		if(this.linkA == from) {
+			this.linkA = to;
+		} else {
+			this.linkB = to;
+		}
+	}
 
 	boolean hasRankThree() {
 		return (this.left != null && this.left.getRank() == 3) ||
@@ -113,7 +151,11 @@ class Move {
 	
 	@Override
 	public String toString() {
-		return this.name;
+		if(this.index < 0) return "NONMOVE";
+		if(this.horizontal) {
+			return Game.pointName(row, col) + ", " + Game.pointName(row, col + 1);
+		}
+		return Game.pointName(row, col) + ", " + Game.pointName(row + 1, col);
 	}
 
 }
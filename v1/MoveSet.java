@@ -0,0 +1,78 @@
+package jtjudge.Boxes.v1;
+
+//Set of the moves of one board, kept as indices in a dense array with the
+//position of each move beside it, so adding, removing and picking one at
+//random all take constant time. The order only depends on the adds and removes
+//made, never on hash codes. Holding indices rather than Moves lets a game fill
+//the set without making every Move.
+class MoveSet {
+
+	private final int[] items;		//Move.getIndex() of each member
+	private final int[] position;	//by Move.getIndex(), -1 if absent
+	private int size;
+
+	MoveSet(int numMoves) {
+		items = new int[numMoves];
+		position = new int[numMoves];
+		for(int i = 0; i < numMoves; i++) {
+			position[i] = -1;
+		}
+		size = 0;
+	}
+
+	//Adds every move, as adding them from the last index to the first would.
+	void fill() {
+		int n = items.length;
+		for(int i = 0; i < n; i++) {
+			items[i] = n - 1 - i;
+			position[n - 1 - i] = i;
+		}
+		size = n;
+	}
+
+	//Takes the members of a set of the same size, in the same order.
+	void copy(MoveSet s) {
+		if(s.items.length != items.length) throw new IllegalArgumentException();
+		System.arraycopy(s.items, 0, items, 0, items.length);
+		System.arraycopy(s.position, 0, position, 0, position.length);
+		size = s.size;
+	}
+
+	boolean add(Move m) {
+		if(position[m.getIndex()] != -1) return false;
+		position[m.getIndex()] = size;
+		items[size++] = m.getIndex();
+		return true;
+	}
+
+	//Moves the last item into the hole left behind.
+	boolean remove(Move m) {
+		int i = position[m.getIndex()];
+		if(i == -1) return false;
+		int last = items[--size];
+		items[i] = last;
+		position[last] = i;
+		position[m.getIndex()] = -1;
+		return true;
+	}
+
+	boolean contains(Move m) { return position[m.getIndex()] != -1; }
+
+	int size() { return size; }
+
+	boolean isEmpty() { return size == 0; }
+
+	//index of the i-th member
+	int get(int i) {
+		if(i < 0 || i >= size) throw new IndexOutOfBoundsException();
+		return items[i];
+	}
+
+	//Returns the index of a move chosen uniformly at random. The set must not
+	//be empty.
+	int pick(SplitMix64 random) {
+		if(size == 0) throw new IllegalStateException();
+		return items[random.nextInt(size)];
+	}
+
+}
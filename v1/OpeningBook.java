@@ -0,0 +1,105 @@
+package jtjudge.Boxes.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+//Opening moves for one board size, read from a file written by
+//OpeningBookGenerator. The file is memory-mapped and searched in place.
+//File layout: MAGIC, rows, cols and the number of entries as four ints, then
+//each entry as a Board.getKey() long and an edge int, sorted by key.
+class OpeningBook {
+
+	static final int MAGIC = 0x426f7842;
+	static final int HEADER = 16;
+	static final int ENTRY = 12;
+
+	//where Game looks for books, named by fileName()
+	static final String DIRECTORY_PROPERTY = "boxes.book.dir";
+
+	private static final HashMap<Long, OpeningBook> LOADED = new HashMap<>();
+
+	private final int rows;
+	private final int cols;
+	private final int size;
+	private final ByteBuffer data;
+
+	private OpeningBook(int rows, int cols, int size, ByteBuffer data) {
+		this.rows = rows;
+		this.cols = cols;
+		this.size = size;
+		this.data = data;
+	}
+
+	static String fileName(int rows, int cols) {
+		return "boxes-" + rows + "x" + cols + ".book";
+	}
+
+	//Maps a book file into memory, checking only its header.
+	static OpeningBook load(File file) throws IOException {
+		try(RandomAccessFile f = new RandomAccessFile(file, "r");
+				FileChannel channel = f.getChannel()) {
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(data.limit() < HEADER || data.getInt(0) != MAGIC) {
+				throw new IOException("not an opening book: " + file);
+			}
+			int rows = data.getInt(4), cols = data.getInt(8), size = data.getInt(12);
+			if(rows < 1 || cols < 1 || size < 0 || data.limit() != HEADER + (long) size * ENTRY) {
+				throw new IOException("bad opening book header: " + file);
+			}
+			return new OpeningBook(rows, cols, size, data);
+		}
+	}
+
+	//Returns the book for the given size from the directory named by
+	//DIRECTORY_PROPERTY, or null if there is none. Each size is looked for
+	//once, and a missing or unreadable file counts as none.
+	static synchronized OpeningBook forSize(int rows, int cols) {
+		Long key = ((long) rows << 32) | cols;
+		if(!LOADED.containsKey(key)) {
+			OpeningBook b = null;
+			String dir = System.getProperty(DIRECTORY_PROPERTY);
+			if(dir != null) {
+				File file = new File(dir, fileName(rows, cols));
+				if(file.isFile()) {
+					try {
+						b = load(file);
+						if(b.rows != rows || b.cols != cols) b = null;
+					} catch (IOException e) {
+						b = null;
+					}
+				}
+			}
+			LOADED.put(key, b);
+		}
+		return LOADED.get(key);
+	}
+
+	int getRows() { return rows; }
+
+	int getCols() { return cols; }
+
+	int size() { return size; }
+
+	//Returns the book edge for the position with the given key, or -1.
+	int probe(long key) {
+		int lo = 0, hi = size - 1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long k = data.getLong(HEADER + mid * ENTRY);
+			if(k < key) {
+				lo = mid + 1;
+			} else if(k > key) {
+				hi = mid - 1;
+			} else {
+				return data.getInt(HEADER + mid * ENTRY + 8);
+			}
+		}
+		return -1;
+	}
+
+}
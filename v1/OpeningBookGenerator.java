@@ -0,0 +1,124 @@
+package jtjudge.Boxes.v1;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+//Builds an opening book from self-play. Two CPUs of the given level play the
+//given number of games, and each edge drawn in the first plies is scored by
+//how often its player went on to win. A position gets into the book once it
+//has been seen in MIN_GAMES games, with the edge of the best win rate among
+//those played at least MIN_PLAYS times.
+//Arguments: rows cols [games] [plies] [level] [directory], writing
+//OpeningBook.fileName(rows, cols).
+public class OpeningBookGenerator {
+
+	static final int MIN_GAMES = 20;
+	static final int MIN_PLAYS = 5;
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("usage: OpeningBookGenerator rows cols [games] [plies] [level] [directory]");
+			return;
+		}
+		int rows = Integer.parseInt(args[0]);
+		int cols = Integer.parseInt(args[1]);
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int plies = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+		int level = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+		File dir = new File(args.length > 5 ? args[5] : ".");
+		File file = new File(dir, OpeningBook.fileName(rows, cols));
+		long start = System.nanoTime();
+		int size = generate(rows, cols, games, plies, level, file);
+		System.out.println("wrote " + size + " positions to " + file + " in " +
+				(System.nanoTime() - start) / 1000000 + "ms");
+	}
+
+	//Returns the number of positions written.
+	static int generate(int rows, int cols, int games, int plies, int level, File file)
+			throws IOException {
+		int numEdges = Topology.get(rows, cols).getNumEdges();
+		//per position, for each edge: times played, then half-points won
+		HashMap<Long, int[]> stats = new HashMap<>();
+		long[] keys = new long[plies];
+		int[] edges = new int[plies];
+		Player[] movers = new Player[plies];
+		for(int g = 0; g < games; g++) {
+			Game game = new Game(rows, cols);
+			Player p1 = Player.constructComputerPlayer("CPU 1", '1', Color.RED, level);
+			Player p2 = Player.constructComputerPlayer("CPU 2", '2', Color.BLUE, level);
+			game.add(p1);
+			game.add(p2);
+			int ply = 0;
+			while(!game.isFinished()) {
+				Player p = game.getTurn();
+				Move m = p.thinkOfMove(game, p.getDiff());
+				if(m == null || !m.isAvailable()) {
+					throw new IllegalStateException("Lv " + level + " CPU gave " + m +
+							" at position " + Long.toHexString(game.getKey()));
+				}
+				if(ply < plies) {
+					keys[ply] = game.getKey();
+					edges[ply] = m.getIndex();
+					movers[ply] = p;
+					ply++;
+				}
+				game.make(m, p);
+			}
+			for(int i = 0; i < ply; i++) {
+				int[] s = stats.get(keys[i]);
+				if(s == null) {
+					s = new int[2 * numEdges];
+					stats.put(keys[i], s);
+				}
+				Player other = movers[i] == p1 ? p2 : p1;
+				int mine = movers[i].getScore(), theirs = other.getScore();
+				s[edges[i]]++;
+				s[numEdges + edges[i]] += mine > theirs ? 2 : mine == theirs ? 1 : 0;
+			}
+		}
+		ArrayList<long[]> entries = new ArrayList<>();
+		for(Map.Entry<Long, int[]> entry : stats.entrySet()) {
+			int[] s = entry.getValue();
+			int total = 0, best = -1;
+			for(int e = 0; e < numEdges; e++) {
+				total += s[e];
+				if(s[e] >= MIN_PLAYS && (best == -1 ||
+						(long) s[numEdges + e] * s[best] > (long) s[numEdges + best] * s[e])) {
+					best = e;
+				}
+			}
+			if(total >= MIN_GAMES && best != -1) {
+				entries.add(new long[] { entry.getKey(), best });
+			}
+		}
+		long[][] sorted = entries.toArray(new long[entries.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+		try(RandomAccessFile f = new RandomAccessFile(file, "rw");
+				FileChannel channel = f.getChannel()) {
+			long size = OpeningBook.HEADER + (long) sorted.length * OpeningBook.ENTRY;
+			f.setLength(size);
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(OpeningBook.MAGIC).putInt(rows).putInt(cols).putInt(sorted.length);
+			for(long[] e : sorted) {
+				out.putLong(e[0]).putInt((int) e[1]);
+			}
+			out.force();
+		}
+		return sorted.length;
+	}
+
+}
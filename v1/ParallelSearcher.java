@@ -0,0 +1,157 @@
+package jtjudge.Boxes.v1;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Runs the Lv 5 search on a ForkJoinPool by splitting the root. The deepening,
+//its windows and the principal variation are Searcher's; only the search of
+//the root at each depth differs. The first root move, the one on the last
+//principal variation, is searched alone to get a bound, then the rest are
+//searched at once, each on a Searcher of its own. Every Searcher shares one
+//transposition table and one set of limits, and the best value so far is
+//shared as the lower bound of every later root move.
+class ParallelSearcher extends Searcher {
+
+	private final ForkJoinPool pool;
+	private final ConcurrentLinkedQueue<Searcher> idle;
+	private final ConcurrentLinkedQueue<Searcher> workers;
+	private Limits limits;
+
+	ParallelSearcher(Board b, TranspositionTable table, ForkJoinPool pool) {
+		super(b, table);
+		if(pool == null) throw new NullPointerException();
+		this.pool = pool;
+		idle = new ConcurrentLinkedQueue<>();
+		workers = new ConcurrentLinkedQueue<>();
+	}
+
+	//As above, but starts from a copy of an evaluator of the position. See
+	//Searcher.
+	ParallelSearcher(Board b, TranspositionTable table, PatternEvaluator eval, ForkJoinPool pool) {
+		super(b, table, eval);
+		if(pool == null) throw new NullPointerException();
+		this.pool = pool;
+		idle = new ConcurrentLinkedQueue<>();
+		workers = new ConcurrentLinkedQueue<>();
+	}
+
+	@Override
+	void start(Limits limits) {
+		super.start(limits);
+		this.limits = limits;
+	}
+
+	//nodes searched by this and by every worker
+	@Override
+	long getNodes() {
+		long nodes = super.getNodes();
+		for(Searcher s : workers) {
+			nodes += s.getNodes();
+		}
+		return nodes;
+	}
+
+	@Override
+	int searchRoot(final int depth, int alpha, final int beta) {
+		int alpha0 = alpha;
+		final int count = orderRoot();
+		final int[] list = getRootList();
+		setRootLine(null);
+		int best = searchRootMove(list[0], depth, alpha, beta), bestEdge = -1;
+		if(isAborted()) {
+			endRoot(depth, alpha0, beta, -INFINITY, -1);
+			return -1;
+		}
+		if(best > alpha) {
+			alpha = best;
+			bestEdge = list[0];
+			setRootLine(getRootLine(list[0]));
+		}
+		if(alpha < beta && count > 1) {
+			final AtomicInteger shared = new AtomicInteger(alpha);
+			//a move only beats the others if it scored above the bound it was
+			//given; the rest only give an upper bound
+			final int[] values = new int[count];
+			final boolean[] done = new boolean[count];
+			final boolean[] better = new boolean[count];
+			final int[][] lines = new int[count][];
+			final ArrayList<RecursiveAction> tasks = new ArrayList<>();
+			for(int i = 1; i < count; i++) {
+				final int index = i;
+				tasks.add(new RecursiveAction() {
+					@Override
+					protected void compute() {
+						int a = shared.get();
+						if(a >= beta) return;	//another move already failed high
+						Searcher s = borrow();
+						int v = s.searchRootMove(list[index], depth, a, beta);
+						if(!s.isAborted()) {
+							values[index] = v;
+							done[index] = true;
+							if(v > a) {
+								better[index] = true;
+								lines[index] = s.getRootLine(list[index]);
+								raise(shared, v);
+							}
+						}
+						idle.add(s);
+					}
+				});
+			}
+			ForkJoinTask<Void> all = pool.submit(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+			try {
+				all.get();
+			} catch (InterruptedException e) {
+				//give up on the rest, keeping the interrupt for the caller
+				limits.stop();
+				Thread.currentThread().interrupt();
+				checkStopped();
+				endRoot(depth, alpha0, beta, best, bestEdge);
+				return bestEdge;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+			checkStopped();
+			for(int i = 1; i < count; i++) {
+				if(!done[i]) continue;
+				if(better[i] && values[i] > alpha) {
+					alpha = values[i];
+					bestEdge = list[i];
+					setRootLine(lines[i]);
+				}
+				if(values[i] > best) best = values[i];
+			}
+		}
+		endRoot(depth, alpha0, beta, best, bestEdge);
+		return bestEdge;
+	}
+
+	//Takes an idle Searcher of the root position, making one if there is none.
+	private Searcher borrow() {
+		Searcher s = idle.poll();
+		if(s == null) {
+			s = fork();
+			workers.add(s);
+		}
+		s.start(limits);
+		return s;
+	}
+
+	private static void raise(AtomicInteger alpha, int v) {
+		int a = alpha.get();
+		while(v > a && !alpha.compareAndSet(a, v)) {
+			a = alpha.get();
+		}
+	}
+
+}
@@ -0,0 +1,220 @@
+package jtjudge.Boxes.v1;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Leaf evaluation for the Lv 5 search, read from a table of local patterns.
+//Every box anchors a window of itself and the boxes to its right, below, and
+//below right. The twelve edges of the window, plus one bit each for the box to
+//the right and the box below lying off the board, make a 14-bit pattern. Edges
+//off the board count as drawn. The value of a position is the sum of the table
+//over every window, and is kept up to date as edges are drawn and taken back,
+//so reading it at a leaf costs nothing.
+class PatternEvaluator {
+
+	//slots of the twelve edges in a pattern, for the window's boxes A (the
+	//anchor), B (right), C (below) and D (below right)
+	static final int
+	A_LEFT = 0,
+	A_TOP = 1,
+	A_RIGHT = 2,	//also B's left
+	A_BOTTOM = 3,	//also C's top
+	B_TOP = 4,
+	B_RIGHT = 5,
+	B_BOTTOM = 6,	//also D's top
+	C_LEFT = 7,
+	C_RIGHT = 8,	//also D's left
+	C_BOTTOM = 9,
+	D_RIGHT = 10,
+	D_BOTTOM = 11,
+	NO_B = 12,
+	NO_C = 13;
+
+	static final int NUM_PATTERNS = 1 << 14;
+
+	//an edge lies in up to three windows across and two down, or the reverse
+	private static final int WINDOWS_PER_EDGE = 6;
+
+	//built-in table, shared and never written; clone it to tune
+	static final int[] DEFAULT_WEIGHTS = new int[NUM_PATTERNS];
+
+	static {
+		for(int p = 0; p < NUM_PATTERNS; p++) {
+			DEFAULT_WEIGHTS[p] = defaultWeight(p);
+		}
+	}
+
+	private final int[] weights;
+	private final Layout layout;
+	private final int[] patterns;	//per box, then the dummy window
+	private int value;
+
+	//Evaluates with the given table of NUM_PATTERNS weights, such as one tuned
+	//offline, which must not change afterwards.
+	PatternEvaluator(Board board, int[] weights) {
+		if(weights.length != NUM_PATTERNS) throw new IllegalArgumentException();
+		this.weights = weights;
+		layout = Layout.get(board);
+		int rows = board.getRows(), cols = board.getCols(), numEdges = board.getNumEdges();
+		patterns = new int[rows * cols + 1];
+		for(int r = 0; r < rows; r++) {
+			for(int c = 0; c < cols; c++) {
+				patterns[r * cols + c] = offBoard(c + 1 < cols, r + 1 < rows);
+			}
+		}
+		int[] windowOf = layout.windowOf;
+		short[] bitOf = layout.bitOf;
+		for(int e = 0; e < numEdges; e++) {
+			if(board.isAvailable(e)) continue;
+			for(int k = WINDOWS_PER_EDGE * e; k < WINDOWS_PER_EDGE * (e + 1); k++) {
+				patterns[windowOf[k]] |= bitOf[k];
+			}
+		}
+		for(int w = 0; w < rows * cols; w++) {
+			value += weights[patterns[w]];
+		}
+	}
+
+	//Copies an evaluator of a board of the same size for the given board,
+	//which must already have copied that evaluator's board.
+	PatternEvaluator(Board board, PatternEvaluator e) {
+		if(Layout.get(board) != e.layout) throw new IllegalArgumentException();
+		weights = e.weights;
+		layout = e.layout;
+		patterns = e.patterns.clone();
+		value = e.value;
+	}
+
+	//Call after the board draws edge e.
+	void make(int e) {
+		int[] windowOf = layout.windowOf;
+		short[] bitOf = layout.bitOf;
+		for(int k = WINDOWS_PER_EDGE * e; k < WINDOWS_PER_EDGE * (e + 1); k++) {
+			int w = windowOf[k];
+			int p = patterns[w], q = p | bitOf[k];
+			value += weights[q] - weights[p];
+			patterns[w] = q;
+		}
+	}
+
+	//Call after the board takes back edge e.
+	void unmake(int e) {
+		int[] windowOf = layout.windowOf;
+		short[] bitOf = layout.bitOf;
+		for(int k = WINDOWS_PER_EDGE * e; k < WINDOWS_PER_EDGE * (e + 1); k++) {
+			int w = windowOf[k];
+			int p = patterns[w], q = p & ~bitOf[k];
+			value += weights[q] - weights[p];
+			patterns[w] = q;
+		}
+	}
+
+	//Estimated boxes the side to move takes before moving elsewhere.
+	int getValue() { return value; }
+
+	//The anchor counts if it is at rank 3, as numThrees does. So does a box at
+	//rank 2 that taking a rank 3 neighbour through their shared side would
+	//bring to rank 3, for each pair of neighbours the window owns: the anchor
+	//with the box to its right and with the box below.
+	private static int defaultWeight(int p) {
+		int a = rank(p, A_LEFT, A_TOP, A_RIGHT, A_BOTTOM);
+		int b = rank(p, A_RIGHT, B_TOP, B_RIGHT, B_BOTTOM);
+		int c = rank(p, A_BOTTOM, C_LEFT, C_RIGHT, C_BOTTOM);
+		int w = a == 3 ? 1 : 0;
+		if((p & (1 << NO_B | 1 << A_RIGHT)) == 0) {
+			if(a == 3 && b == 2 || a == 2 && b == 3) w++;
+		}
+		if((p & (1 << NO_C | 1 << A_BOTTOM)) == 0) {
+			if(a == 3 && c == 2 || a == 2 && c == 3) w++;
+		}
+		return w;
+	}
+
+	private static int rank(int p, int s0, int s1, int s2, int s3) {
+		return (p >>> s0 & 1) + (p >>> s1 & 1) + (p >>> s2 & 1) + (p >>> s3 & 1);
+	}
+
+	//Bits of the pattern of a window that are set however play goes: those of
+	//the edges off the board, and NO_B and NO_C.
+	private static int offBoard(boolean hasB, boolean hasC) {
+		int p = 0;
+		if(!hasB) {
+			p |= 1 << B_TOP | 1 << B_RIGHT | 1 << B_BOTTOM | 1 << NO_B;
+		}
+		if(!hasC) {
+			p |= 1 << C_LEFT | 1 << C_RIGHT | 1 << C_BOTTOM | 1 << NO_C;
+		}
+		if(!hasB || !hasC) {
+			p |= 1 << D_RIGHT | 1 << D_BOTTOM;
+		}
+		return p;
+	}
+
+	//Which edges make up each window and which windows each edge lies in. Like
+	//a Topology it depends only on the size of the board, so one instance is
+	//built per size and shared, and its arrays are never written afterwards.
+	//It may be collected once no evaluator of its size is left.
+	private static class Layout {
+
+		final int[] windowOf;	//WINDOWS_PER_EDGE per edge, the dummy if unused
+		final short[] bitOf;	//matching windowOf, 0 for the dummy
+
+		private static final ConcurrentHashMap<Long, WeakReference<Layout>> CACHE =
+				new ConcurrentHashMap<>();
+
+		private Layout(Board board) {
+			int rows = board.getRows(), cols = board.getCols(), numSpaces = board.getNumSpaces();
+			windowOf = new int[WINDOWS_PER_EDGE * board.getNumEdges()];
+			bitOf = new short[windowOf.length];
+			int[] count = new int[board.getNumEdges()];
+			for(int i = 0; i < windowOf.length; i++) {
+				windowOf[i] = numSpaces;
+			}
+			int[] slots = new int[12];
+			for(int r = 0; r < rows; r++) {
+				for(int c = 0; c < cols; c++) {
+					int s = r * cols + c;
+					boolean hasB = c + 1 < cols, hasC = r + 1 < rows;
+					int b = s + 1, cs = s + cols, d = s + cols + 1;
+					slots[A_LEFT] = board.getSide(s, Board.LEFT);
+					slots[A_TOP] = board.getSide(s, Board.TOP);
+					slots[A_RIGHT] = board.getSide(s, Board.RIGHT);
+					slots[A_BOTTOM] = board.getSide(s, Board.BOTTOM);
+					slots[B_TOP] = hasB ? board.getSide(b, Board.TOP) : -1;
+					slots[B_RIGHT] = hasB ? board.getSide(b, Board.RIGHT) : -1;
+					slots[B_BOTTOM] = hasB ? board.getSide(b, Board.BOTTOM) : -1;
+					slots[C_LEFT] = hasC ? board.getSide(cs, Board.LEFT) : -1;
+					slots[C_RIGHT] = hasC ? board.getSide(cs, Board.RIGHT) : -1;
+					slots[C_BOTTOM] = hasC ? board.getSide(cs, Board.BOTTOM) : -1;
+					slots[D_RIGHT] = hasB && hasC ? board.getSide(d, Board.RIGHT) : -1;
+					slots[D_BOTTOM] = hasB && hasC ? board.getSide(d, Board.BOTTOM) : -1;
+					for(int i = 0; i < slots.length; i++) {
+						int e = slots[i];
+						if(e == -1) continue;
+						int k = WINDOWS_PER_EDGE * e + count[e]++;
+						windowOf[k] = s;
+						bitOf[k] = (short) (1 << i);
+					}
+				}
+			}
+		}
+
+		//Returns the shared layout for the size of the board, building it if
+		//none is in use.
+		static Layout get(Board board) {
+			Long size = ((long) board.getRows() << 32) | board.getCols();
+			while(true) {
+				WeakReference<Layout> ref = CACHE.get(size);
+				Layout l = ref == null ? null : ref.get();
+				if(l != null) return l;
+				l = new Layout(board);
+				WeakReference<Layout> made = new WeakReference<>(l);
+				if(ref == null ? CACHE.putIfAbsent(size, made) == null : CACHE.replace(size, ref, made)) {
+					return l;
+				}
+			}
+		}
+
+	}
+
+}
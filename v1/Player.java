@@ -16,9 +16,9 @@ class Player {
 	private int diff;
 
 	private static final int MIN_DIFF = 1;
-	private static final int MAX_DIFF = 5;
+	private static final int MAX_DIFF = 6;
 
-	private ArrayList<Move> strategy;	//used by Lv 4-5 CPUs
+	private Strategy strategy;
 
 	private Player() {
 		//suppress default constructor
@@ -34,7 +34,7 @@ class Player {
 		p.wins = 0;
 		p.hashcode = 0;
 		p.isCPU = false;
-		p.strategy = new ArrayList<>();	//used only in windowed form
+		p.strategy = new Strategy();	//used only in windowed form
 		return p;
 	}
 	
@@ -51,26 +51,64 @@ class Player {
 		p.hashcode = 0;
 		p.isCPU = true;
 		p.diff = diff;
-		p.strategy = new ArrayList<>();
+		p.strategy = new Strategy();
 		return p;
 	}
 
+	//Copies a player for a snapshot of a game. The copy keeps the score and
+	//wins but starts without a strategy, since that refers to the old moves.
+	static Player constructCopy(Player p) {
+		Player q = new Player();
+		q.name = p.name;
+		q.mark = p.mark;
+		q.color = p.color;
+		q.score = p.score;
+		q.wins = p.wins;
+		q.hashcode = 0;
+		q.isCPU = p.isCPU;
+		q.diff = p.diff;
+		q.strategy = new Strategy();
+		return q;
+	}
+
+	//Plays on from the strategy while it still fits the position, and
+	//otherwise plans again.
 	Move thinkOfMove(Game game, int diff) {
-		if(strategy.isEmpty()) {
-			strategy = game.analyze(diff);
-			for(Move m : strategy) {
-				m.setStrategized(true);
-			}
+		Move m = strategy.next(game);
+		if(m == null) {
+			strategy.plan(game.analyze(diff), game.getKey());
+			m = strategy.next(game);
 		}
-		Move m = strategy.remove(0);
 		return m;
 	}
 	
-	void addToStrategy(Move m) {
-		if(!strategy.contains(m)) {
-			strategy.add(m);
-			m.setStrategized(true);
+	//As above, but a CPU answers within the given number of milliseconds of
+	//the call.
+	Move thinkOfMove(Game game, int diff, long millis) {
+		long deadline = deadline(millis);
+		Move m = strategy.next(game);
+		if(m == null) {
+			strategy.plan(game.analyze(diff, deadline), game.getKey());
+			m = strategy.next(game);
 		}
+		return m;
+	}
+	
+	//The deadline, a value of System.nanoTime(), for a move asked for now that
+	//must be ready within the given number of milliseconds. A tenth of the
+	//time is kept back for the work after a search stops.
+	static long deadline(long millis) {
+		if(millis < 1) throw new IllegalArgumentException();
+		return System.nanoTime() + millis * 900000;
+	}
+	
+	//Takes a plan made for the position with the given key.
+	void planStrategy(ArrayList<Move> plan, long key) {
+		strategy.plan(plan, key);
+	}
+	
+	void addToStrategy(Move m) {
+		strategy.add(m);
 	}
 	
 	String getName() { return this.name; }
@@ -87,17 +125,22 @@ class Player {
 	
 	void scoreUp() { this.score++; }
 	
+	void scoreDown() { this.score--; }
+	
 	void resetScore() { this.score = 0; }
 	
 	int getScore() { return this.score; }
 	
 	void winsUp() { this.wins++; }
 	
+	void winsDown() { this.wins--; }
+	
 	int getWins() { return this.wins; }
 	
 	boolean hasStrategy() { return !this.strategy.isEmpty(); }
 	
-	Move doStrategy() { return this.strategy.remove(0); }
+	//next move of the strategy, or null if it no longer fits the game
+	Move doStrategy(Game game) { return this.strategy.next(game); }
 	
 	@Override
 	public boolean equals(Object o) {
@@ -0,0 +1,452 @@
+package jtjudge.Boxes.v1;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Alpha-beta search for the Level 5 CPU. Searches a private copy of a Board,
+//making and unmaking edges in place, and scores positions as boxes won by
+//the side to move minus boxes won by everyone else from here on. Completing a
+//box keeps the turn, so the sign only flips when the turn passes between the
+//player who started the search and the others. With more than two players the
+//others are treated as one side.
+//Positions at the depth limit are scored by a PatternEvaluator.
+//Each iteration of the deepening first searches a narrow window around the
+//value of the last one, and follows the last principal variation first.
+//ParallelSearcher keeps this driver and only splits the search of the root.
+class Searcher {
+
+	static final int TABLE_BITS = 18;
+
+	static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	//half the width of the first window of each iteration, in boxes
+	private static final int ASPIRATION = 2;
+
+	//move generation checks the limits every SCAN_MASK + 1 steps, counting
+	//each edge and each box walked to price a sacrifice, since on big boards
+	//one scan of the edges can outlast the time given for a move
+	private static final int SCAN_MASK = 4095;
+
+	//plies and moves per ply there is room for at first
+	private static final int INITIAL_PLIES = 16, INITIAL_MOVES = 64;
+
+	private final Board board;
+	private final TranspositionTable table;
+	private final PatternEvaluator eval;
+	private final int numEdges;
+	private final int numSpaces;
+	private final int checkMask;	//limits are checked every checkMask + 1 nodes
+
+	private int root;		//player to move at the root
+	private long salt;		//keeps the tables of different roots apart
+	private long nodes;
+	private Limits limits;
+	private boolean aborted;
+	private int rootValue;	//of the last call to searchRoot
+
+	//best line from each ply in the current iteration, and the best line of
+	//the last completed iteration
+	private int[][] pv;
+	private int[] pvLength;
+	private int[] lastPv;
+	private int lastPvLength;
+	private boolean followPv;	//whether the node being entered is on lastPv
+
+	//ordered moves per ply, and scratch space for ordering one node. These
+	//and the lines above grow as needed, since a big board is only searched a
+	//few plies deep and most of its edges are never listed.
+	private int[][] lists;
+	private int[] safe;
+	private long[] sacrifices;
+	private int[] counts;	//of sacrifices by boxes given away
+
+	Searcher(Board b, TranspositionTable table) {
+		this(b, table, PatternEvaluator.DEFAULT_WEIGHTS);
+	}
+	
+	//As above, but scores the leaves with the given pattern weights. See
+	//PatternEvaluator.
+	Searcher(Board b, TranspositionTable table, int[] weights) {
+		this(b, table, weights, null);
+	}
+
+	//As above, but starts from a copy of an evaluator kept up to date with the
+	//position, which is quicker than reading the whole board again.
+	Searcher(Board b, TranspositionTable table, PatternEvaluator eval) {
+		this(b, table, null, eval);
+	}
+
+	private Searcher(Board b, TranspositionTable table, int[] weights, PatternEvaluator e) {
+		if(table == null) throw new NullPointerException();
+		this.board = new Board(b.getRows(), b.getCols());
+		this.board.copy(b);
+		this.table = table;
+		eval = e == null ? new PatternEvaluator(board, weights) : new PatternEvaluator(board, e);
+		numEdges = board.getNumEdges();
+		numSpaces = board.getNumSpaces();
+		//each node scans every edge, so check more often on big boards
+		checkMask = Integer.highestOneBit(Math.max(1, Math.min(64, 8192 / numEdges))) - 1;
+		lists = new int[INITIAL_PLIES][];
+		safe = new int[INITIAL_MOVES];
+		sacrifices = new long[INITIAL_MOVES];
+		counts = new int[INITIAL_MOVES];
+		pv = new int[INITIAL_PLIES][];
+		pvLength = new int[INITIAL_PLIES + 1];
+		lastPv = new int[0];
+	}
+
+	//Searches deeper and deeper until the position is solved or the node or
+	//time limit runs out, and returns the best edge found, or -1 if the board
+	//is full.
+	int findMove(long nodeLimit, long millis) {
+		return findMove(new Limits(nodeLimit, System.nanoTime() + millis * 1000000),
+				Integer.MAX_VALUE);
+	}
+
+	//As above, but stops after maxDepth plies. When the limits run out the
+	//best edge of the deepest search so far is returned, or of a partial one
+	//if it has already found a better edge.
+	int findMove(Limits limits, int maxDepth) {
+		nodes = 0;
+		start(limits);
+		lastPvLength = 0;
+		int edgesLeft = board.getEdgesLeft();
+		if(edgesLeft == 0) return -1;
+		int best = -1, value = 0;
+		for(int depth = 1; depth <= Math.min(edgesLeft, maxDepth) && !aborted; depth++) {
+			int alpha = depth == 1 ? -INFINITY : value - ASPIRATION;
+			int beta = depth == 1 ? INFINITY : value + ASPIRATION;
+			int move = searchRoot(depth, alpha, beta);
+			if(move != -1) best = move;
+			if(!aborted && (rootValue <= alpha || rootValue >= beta)) {
+				//the value fell outside the window, so search again in full
+				move = searchRoot(depth, -INFINITY, INFINITY);
+				if(move != -1) best = move;
+			}
+			if(!aborted) {
+				value = rootValue;
+				lastPv = Arrays.copyOf(pv[0], pvLength[0]);
+				lastPvLength = pvLength[0];
+			}
+		}
+		if(best == -1 && orderRoot() > 0) best = lists[0][0];
+		return best;
+	}
+
+	//Nodes searched since this Searcher was made, or since the last call to
+	//findMove.
+	long getNodes() { return nodes; }
+
+	//Prepares to search the current position under the given limits, which
+	//may be shared with other Searchers of the same position.
+	void start(Limits limits) {
+		if(limits == null) throw new NullPointerException();
+		this.limits = limits;
+		aborted = limits.spend(0);
+		root = board.getTurn();
+		salt = board.getNumPlayers() > 2 ? Board.mix(root + 0x51ed27L) : 0;
+	}
+
+	boolean isAborted() { return aborted; }
+
+	//key the root position is stored under in the table
+	long getRootKey() { return board.getKey() ^ salt; }
+
+	//Lists the edges available at the root in the order they should be
+	//searched, and returns how many there are. See getRootList().
+	int orderRoot() {
+		long entry = table.probe(getRootKey());
+		int first = lastPvLength > 0 ? lastPv[0] :
+			entry == 0 ? -1 : TranspositionTable.getEdge(entry);
+		return generate(0, first);
+	}
+
+	//The edges listed by the last call to orderRoot, until the next one.
+	//Searching root moves leaves it alone.
+	int[] getRootList() { return lists[0]; }
+
+	//A new Searcher of the current position with the same table and weights.
+	Searcher fork() {
+		return new Searcher(board, table, eval);
+	}
+
+	//Value of drawing edge e at the root, searched depth plies deep, following
+	//the last principal variation if it starts with e. Only meaningful if the
+	//search was not aborted.
+	int searchRootMove(int e, int depth, int alpha, int beta) {
+		if(depth + 1 >= pv.length) {
+			lists = Arrays.copyOf(lists, 2 * (depth + 1));
+			pv = Arrays.copyOf(pv, 2 * (depth + 1));
+			pvLength = Arrays.copyOf(pvLength, 2 * (depth + 1) + 1);
+		}
+		followPv = lastPvLength > 0 && e == lastPv[0];
+		return child(e, depth, alpha, beta, 0);
+	}
+
+	//The best line found by the last call to searchRootMove, which drew e.
+	int[] getRootLine(int e) {
+		int[] line = new int[pvLength[1] + 1];
+		line[0] = e;
+		if(pvLength[1] > 0) System.arraycopy(pv[1], 0, line, 1, pvLength[1]);
+		return line;
+	}
+
+	//Takes the given line as the best at the root, or none if null.
+	void setRootLine(int[] line) {
+		if(line == null) {
+			pvLength[0] = 0;
+			return;
+		}
+		if(pv[0] == null || pv[0].length < line.length) pv[0] = new int[line.length];
+		System.arraycopy(line, 0, pv[0], 0, line.length);
+		pvLength[0] = line.length;
+	}
+
+	//Searches the root within the window and leaves the value in rootValue.
+	//Returns the edge that raised alpha the most, or -1 if none did before the
+	//limits ran out.
+	int searchRoot(int depth, int alpha, int beta) {
+		int alpha0 = alpha;
+		int count = orderRoot();
+		int[] list = lists[0];
+		pvLength[0] = 0;
+		int best = -INFINITY, bestEdge = -1;
+		for(int i = 0; i < count; i++) {
+			int v = searchRootMove(list[i], depth, alpha, beta);
+			if(aborted) break;
+			if(v > best) {
+				best = v;
+				if(v > alpha) {
+					alpha = v;
+					bestEdge = list[i];
+					updatePv(0, list[i]);
+					if(alpha >= beta) break;
+				}
+			}
+		}
+		endRoot(depth, alpha0, beta, best, bestEdge);
+		return bestEdge;
+	}
+
+	//Keeps the result of searching the root within the window from alpha0 to
+	//beta, storing it in the table unless the search was aborted.
+	void endRoot(int depth, int alpha0, int beta, int best, int bestEdge) {
+		rootValue = best;
+		if(!aborted) {
+			int bound = best <= alpha0 ? TranspositionTable.UPPER :
+				best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(getRootKey(), best, depth, bound, bestEdge);
+		}
+	}
+
+	//Aborts the search if the shared limits were used up, as by another
+	//Searcher, and returns whether it is aborted.
+	boolean checkStopped() {
+		if(limits.isStopped()) aborted = true;
+		return aborted;
+	}
+
+	private int search(int depth, int alpha, int beta, int ply) {
+		boolean onPv = followPv && ply < lastPvLength;
+		if((++nodes & checkMask) == 0) checkLimits();
+		if(aborted) return 0;
+		if(depth <= 0) return eval.getValue();
+		long key = board.getKey() ^ salt;
+		long entry = table.probe(key);
+		int tableEdge = -1;
+		if(entry != 0) {
+			tableEdge = TranspositionTable.getEdge(entry);
+			if(TranspositionTable.getDepth(entry) >= depth) {
+				int v = TranspositionTable.getValue(entry);
+				switch(TranspositionTable.getBound(entry)) {
+				case TranspositionTable.EXACT:
+					return v;
+				case TranspositionTable.LOWER:
+					if(v >= beta) return v;
+					break;
+				case TranspositionTable.UPPER:
+					if(v <= alpha) return v;
+					break;
+				}
+			}
+		}
+		int alpha0 = alpha;
+		int count = generate(ply, onPv ? lastPv[ply] : tableEdge);
+		if(aborted) return 0;
+		int[] list = lists[ply];
+		int best = -INFINITY, bestEdge = -1;
+		for(int i = 0; i < count; i++) {
+			followPv = onPv && list[i] == lastPv[ply];
+			int v = child(list[i], depth, alpha, beta, ply);
+			if(aborted) return 0;
+			if(v > best) {
+				best = v;
+				bestEdge = list[i];
+				if(v > alpha) {
+					alpha = v;
+					updatePv(ply, list[i]);
+					if(alpha >= beta) break;
+				}
+			}
+		}
+		int bound = best <= alpha0 ? TranspositionTable.UPPER :
+			best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		table.store(key, best, depth, bound, bestEdge);
+		return best;
+	}
+
+	//Value of drawing edge e for the side to move.
+	private int child(int e, int depth, int alpha, int beta, int ply) {
+		pvLength[ply + 1] = 0;
+		int mover = board.getTurn();
+		int num = board.make(e);
+		eval.make(e);
+		int v;
+		if(board.isFinished()) {
+			v = num;
+		} else if((board.getTurn() == root) == (mover == root)) {
+			v = num + search(depth - 1, alpha - num, beta - num, ply + 1);
+		} else {
+			v = num - search(depth - 1, num - beta, num - alpha, ply + 1);
+		}
+		board.unmake(e);
+		eval.unmake(e);
+		return v;
+	}
+
+	//Makes the line of a ply edge e followed by the line of the next ply.
+	private void updatePv(int ply, int e) {
+		if(pv[ply] == null || pv[ply].length <= pvLength[ply + 1]) {
+			pv[ply] = new int[pv.length];
+		}
+		pv[ply][0] = e;
+		if(pvLength[ply + 1] > 0) {
+			System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+		}
+		pvLength[ply] = pvLength[ply + 1] + 1;
+	}
+
+	//Fills the move list for a ply and returns its length. The given edge
+	//comes first, then edges that complete a box, then edges that leave no box
+	//at rank 3, then sacrifices, fewest boxes given away first and then in
+	//edge order. If the limits run out part way, only the edges looked at so
+	//far are listed.
+	private int generate(int ply, int firstEdge) {
+		if(lists[ply] == null) lists[ply] = new int[INITIAL_MOVES];
+		int[] list = lists[ply];
+		int count = 0, numSafe = 0, numSacrifices = 0, maxGiven = 0;
+		long work = 0, nextCheck = SCAN_MASK + 1;
+		if(firstEdge >= 0 && firstEdge < numEdges && board.isAvailable(firstEdge)) {
+			list[count++] = firstEdge;
+		}
+		for(int e = board.nextAvailable(0); e != -1; e = board.nextAvailable(e + 1)) {
+			if(++work >= nextCheck) {
+				nextCheck = work + SCAN_MASK + 1;
+				if(limits.spend(0)) {
+					aborted = true;
+					break;
+				}
+			}
+			if(e == firstEdge) continue;
+			int left = board.getLeft(e), right = board.getRight(e);
+			int lrank = board.getRank(left), rrank = board.getRank(right);
+			if(lrank == 3 || rrank == 3) {
+				if(count == list.length) list = lists[ply] = Arrays.copyOf(list, 2 * count);
+				list[count++] = e;
+			} else if(lrank < 2 && rrank < 2) {
+				if(numSafe == safe.length) safe = Arrays.copyOf(safe, 2 * numSafe);
+				safe[numSafe++] = e;
+			} else {
+				int given = 0;
+				if(lrank == 2) given += chainLength(left, e);
+				if(rrank == 2) given += chainLength(right, e);
+				work += given;
+				if(given > maxGiven) maxGiven = given;
+				if(numSacrifices == sacrifices.length) {
+					sacrifices = Arrays.copyOf(sacrifices, 2 * numSacrifices);
+				}
+				sacrifices[numSacrifices++] = ((long) given << 32) | e;
+			}
+		}
+		if(count + numSafe + numSacrifices > list.length) {
+			list = lists[ply] = Arrays.copyOf(list, count + numSafe + numSacrifices);
+		}
+		System.arraycopy(safe, 0, list, count, numSafe);
+		count += numSafe;
+		//sort the sacrifices by counting them, which takes one pass however
+		//many there are and keeps the edge order they were found in
+		if(counts.length < maxGiven + 2) counts = new int[maxGiven + 2];
+		Arrays.fill(counts, 0, maxGiven + 2, 0);
+		for(int i = 0; i < numSacrifices; i++) {
+			counts[(int) (sacrifices[i] >>> 32) + 1]++;
+		}
+		for(int g = 1; g <= maxGiven; g++) {
+			counts[g] += counts[g - 1];
+		}
+		for(int i = 0; i < numSacrifices; i++) {
+			list[count + counts[(int) (sacrifices[i] >>> 32)]++] = (int) sacrifices[i];
+		}
+		return count + numSacrifices;
+	}
+
+	//Counts the boxes a sacrifice on edge e gives away through box s: s itself
+	//and each box of rank 2 beyond it, up to a branch, the border or back to s.
+	private int chainLength(int s, int e) {
+		int length = 0, from = e, current = s;
+		while(length < numSpaces) {
+			length++;
+			int f = -1;
+			for(int side = 0; side < 4; side++) {
+				int g = board.getSide(current, side);
+				if(g != from && board.isAvailable(g)) {
+					f = g;
+					break;
+				}
+			}
+			if(f < 0) break;
+			int next = board.getLeft(f) == current ? board.getRight(f) : board.getLeft(f);
+			if(next < 0 || next == s || board.getRank(next) != 2) break;
+			from = f;
+			current = next;
+		}
+		return length;
+	}
+
+	private void checkLimits() {
+		if(limits.spend(checkMask + 1)) aborted = true;
+	}
+
+	//Node and time limits for one move, which any number of Searchers of the
+	//same position may draw on at once. Nodes are counted in batches, so a
+	//node limit may be overrun by up to 64 per thread.
+	static class Limits {
+
+		private final AtomicLong nodes;
+		private final long nodeLimit;
+		private final long deadline;
+		private volatile boolean stopped;
+
+		//the deadline is a value of System.nanoTime()
+		Limits(long nodeLimit, long deadline) {
+			nodes = new AtomicLong();
+			this.nodeLimit = nodeLimit;
+			this.deadline = deadline;
+		}
+
+		//Counts searched nodes and returns whether the search should stop,
+		//which it also does if the calling thread is interrupted.
+		boolean spend(int n) {
+			if(nodes.addAndGet(n) >= nodeLimit || System.nanoTime() - deadline > 0 ||
+					Thread.currentThread().isInterrupted()) {
+				stopped = true;
+			}
+			return stopped;
+		}
+
+		boolean isStopped() { return stopped; }
+
+		void stop() { stopped = true; }
+
+	}
+
+}
@@ -1,7 +1,6 @@
 package jtjudge.Boxes.v1;
 
 import java.awt.Color;
-import java.util.ArrayList;
 
 class Space {
 	
@@ -12,27 +11,45 @@ class Space {
 	private Color color;
 	private int hashcode;	//cached after first call to hashCode()
 	
-	private Space next;		//for game iterator
+	//the four moves around the space, indexed by Board.LEFT, TOP, RIGHT and
+	//BOTTOM, each fetched from the game when first asked for, and a bit per
+	//side that is set while its move is unmade
+	private final Game game;
+	private final Move[] sides;
+	private int unmade;
 	
-	private ArrayList<Move> unmadeMoves;
-	
-	Space(int index, Space next) {
+	Space(int index, Game game) {
 		this.index = index;
 		this.rank = 0;
 		this.full = false;
 		this.hashcode = 0;
-		this.next = next;
-		this.unmadeMoves = new ArrayList<>();
+		this.game = game;
+		this.sides = new Move[4];
+		this.unmade = 15;
 	}
 
-	boolean add(Move m) {
-		if(m == null || unmadeMoves.size() == 4) return false;
-		return this.unmadeMoves.add(m);
+	//Called by the game when it makes the Move for one of the sides.
+	void setSide(int side, Move m) {
+		if(m == null) throw new NullPointerException();
+		this.sides[side] = m;
 	}
 	
 	boolean remove(Move m) {
 		if(m == null || this.full) return false;
-		return this.unmadeMoves.remove(m);
+		int side = sideOf(m);
+		if(side < 0 || (unmade & (1 << side)) == 0) return false;
+		this.unmade &= ~(1 << side);
+		return true;
+	}
+	
+	//Takes the rank, owner and unmade sides of the matching space of another
+	//game.
+	void copy(Space s) {
+		this.rank = s.rank;
+		this.full = s.full;
+		this.mark = s.mark;
+		this.color = s.color;
+		this.unmade = s.unmade;
 	}
 	
 	boolean rankUp(char ch, Color color) {
@@ -46,6 +63,24 @@ class Space {
 		return false;
 	}
 	
+	//Reverses rankUp(), emptying the space if it was full.
+	void rankDown() {
+		if(rank == 0) throw new IllegalStateException();
+		if(rank-- == 4) {
+			this.full = false;
+			this.mark = 0;
+			this.color = null;
+		}
+	}
+	
+	//Puts back a move taken out by remove().
+	void restore(Move m) {
+		if(m == null) throw new NullPointerException();
+		int side = sideOf(m);
+		if(side < 0) throw new IllegalArgumentException();
+		this.unmade |= 1 << side;
+	}
+	
 	int getIndex() { return this.index; }
 	
 	int getRank() { return this.rank; }
@@ -56,11 +91,20 @@ class Space {
 	
 	Color getColor() { return this.color; }
 	
-	Space getNext() { return this.next; }
+	Move getSide(int side) {
+		if(this.sides[side] == null) game.getMove(game.getSide(index, side));
+		return this.sides[side];
+	}
 	
-	void setNext(Space s) { this.next = s; }
+	int getNumUnmade() { return Integer.bitCount(this.unmade); }
 	
-	ArrayList<Move> getUnmadeMoves() { return this.unmadeMoves; }
+	//Returns the i-th unmade move, counting in side order.
+	Move getUnmade(int i) {
+		int bits = this.unmade;
+		for( ; i > 0; i--) bits &= bits - 1;
+		return getSide(Integer.numberOfTrailingZeros(bits));
+	}
+
 	
 	@Override
 	public boolean equals(Object o) {
@@ -84,5 +128,13 @@ class Space {
 	public String toString() {
 		return "" + this.index;
 	}
+	
+	//A space is to the right of its left and top moves, and to the left of
+	//its right and bottom moves.
+	private int sideOf(Move m) {
+		if(m.getRight() == this) return m.isHorizontal() ? Board.TOP : Board.LEFT;
+		if(m.getLeft() == this) return m.isHorizontal() ? Board.BOTTOM : Board.RIGHT;
+		return -1;
+	}
 
 }
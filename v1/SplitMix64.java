@@ -0,0 +1,68 @@
+package jtjudge.Boxes.v1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Fast splittable random numbers by the SplitMix64 algorithm, the same one
+//behind java.util.SplittableRandom. A stream is not thread-safe: each game or
+//search thread owns one, and forks a stream for another with split(). The
+//same seed always gives the same numbers and the same forks.
+class SplitMix64 {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	//seeds streams made without one
+	private static final AtomicLong SEEDER = new AtomicLong(
+			Board.mix(System.currentTimeMillis()) ^ Board.mix(System.nanoTime()));
+
+	private long seed;
+	private final long gamma;	//always odd
+
+	SplitMix64(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SplitMix64(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	//a stream seeded differently from every other one made this way
+	static SplitMix64 create() {
+		return new SplitMix64(Board.mix(SEEDER.getAndAdd(2 * GOLDEN_GAMMA)));
+	}
+
+	long nextLong() {
+		return Board.mix(seed += gamma);
+	}
+
+	//Returns an int from 0 up to but not including bound, every one equally
+	//likely.
+	int nextInt(int bound) {
+		if(bound <= 0) throw new IllegalArgumentException();
+		int r = (int) (nextLong() >>> 32);
+		int m = bound - 1;
+		if((bound & m) == 0) return r & m;
+		//reject the top few values, which would favor low results
+		int u = r >>> 1;
+		while(u + m - (r = u % bound) < 0) {
+			u = (int) (nextLong() >>> 33);
+		}
+		return r;
+	}
+
+	//Returns a new stream that shares no numbers with this one in practice.
+	//Advances this stream.
+	SplitMix64 split() {
+		return new SplitMix64(nextLong(), mixGamma(seed += gamma));
+	}
+
+	//an odd gamma with enough bit changes to spread the stream well
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return n < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+}
@@ -0,0 +1,66 @@
+package jtjudge.Boxes.v1;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+//The moves a player means to make next. A plan from Game.analyze() holds only
+//for the position it was made for: each move handed out moves the expected key
+//along, and once the game's key differs the rest of the plan is dropped. Moves
+//marked by hand hold anywhere and are only skipped once taken.
+class Strategy {
+
+	private final ArrayDeque<Move> moves;
+	private long key;		//of the position the first move is planned for
+	private boolean isPlanned;
+
+	Strategy() {
+		moves = new ArrayDeque<>();
+		isPlanned = false;
+	}
+
+	//Replaces the strategy with a plan made for the position with the given key.
+	void plan(ArrayList<Move> plan, long key) {
+		clear();
+		for(Move m : plan) {
+			moves.add(m);
+			m.setStrategized(true);
+		}
+		this.key = key;
+		isPlanned = true;
+	}
+
+	//Adds a move marked by hand, unless it is already there.
+	void add(Move m) {
+		if(isPlanned) clear();
+		if(!moves.contains(m)) {
+			moves.add(m);
+			m.setStrategized(true);
+		}
+	}
+
+	//Returns the next move for the game as it stands, or null if there is none
+	//or the plan no longer fits.
+	Move next(Game game) {
+		if(isPlanned && game.getKey() != key) clear();
+		while(!moves.isEmpty()) {
+			Move m = moves.poll();
+			if(m.isAvailable()) {
+				if(isPlanned) key = game.getKeyAfter(m);
+				return m;
+			}
+			if(isPlanned) clear();
+		}
+		return null;
+	}
+
+	void clear() {
+		for(Move m : moves) {
+			m.setStrategized(false);
+		}
+		moves.clear();
+		isPlanned = false;
+	}
+
+	boolean isEmpty() { return moves.isEmpty(); }
+
+}
@@ -0,0 +1,99 @@
+package jtjudge.Boxes.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+//Perfect two-player play for every position of one board size, read from a
+//file written by TablebaseGenerator. The file is memory-mapped rather than
+//parsed, and a position is found at an offset given by its drawn edges, so
+//each probe is a single read.
+//File layout: MAGIC, rows, cols and the number of edges as four ints, then two
+//bytes per set of drawn edges, in order of Board.getEdgeBits(): the boxes the
+//side to move wins from there minus the boxes the other side wins, and the
+//best edge plus one, or 0 if the board is full.
+class Tablebase {
+
+	static final int MAGIC = 0x426f7854;
+	static final int HEADER = 16;
+	static final int MAX_EDGES = 24;	//a 3x3 board
+
+	//where Game looks for tables, named by fileName()
+	static final String DIRECTORY_PROPERTY = "boxes.tablebase.dir";
+
+	private static final HashMap<Long, Tablebase> LOADED = new HashMap<>();
+
+	private final int rows;
+	private final int cols;
+	private final ByteBuffer data;
+
+	private Tablebase(int rows, int cols, ByteBuffer data) {
+		this.rows = rows;
+		this.cols = cols;
+		this.data = data;
+	}
+
+	static String fileName(int rows, int cols) {
+		return "boxes-" + rows + "x" + cols + ".tb";
+	}
+
+	//Maps a table file into memory, checking only its header.
+	static Tablebase load(File file) throws IOException {
+		try(RandomAccessFile f = new RandomAccessFile(file, "r");
+				FileChannel channel = f.getChannel()) {
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(data.limit() < HEADER || data.getInt(0) != MAGIC) {
+				throw new IOException("not a tablebase: " + file);
+			}
+			int rows = data.getInt(4), cols = data.getInt(8), numEdges = data.getInt(12);
+			if(rows < 1 || cols < 1 || numEdges != Topology.get(rows, cols).getNumEdges() ||
+					numEdges > MAX_EDGES || data.limit() != HEADER + (2L << numEdges)) {
+				throw new IOException("bad tablebase header: " + file);
+			}
+			return new Tablebase(rows, cols, data);
+		}
+	}
+
+	//Returns the table for the given size from the directory named by
+	//DIRECTORY_PROPERTY, or null if there is none. Each size is looked for
+	//once, and a missing or unreadable file counts as none.
+	static synchronized Tablebase forSize(int rows, int cols) {
+		Long size = ((long) rows << 32) | cols;
+		if(!LOADED.containsKey(size)) {
+			Tablebase t = null;
+			String dir = System.getProperty(DIRECTORY_PROPERTY);
+			if(dir != null && Topology.get(rows, cols).getNumEdges() <= MAX_EDGES) {
+				File file = new File(dir, fileName(rows, cols));
+				if(file.isFile()) {
+					try {
+						t = load(file);
+						if(t.rows != rows || t.cols != cols) t = null;
+					} catch (IOException e) {
+						t = null;
+					}
+				}
+			}
+			LOADED.put(size, t);
+		}
+		return LOADED.get(size);
+	}
+
+	int getRows() { return rows; }
+
+	int getCols() { return cols; }
+
+	//Boxes the side to move wins from here minus boxes the other side wins.
+	int getValue(long edgeBits) {
+		return data.get(HEADER + 2 * (int) edgeBits);
+	}
+
+	//Returns an edge of perfect play, or -1 if the board is full.
+	int getBestEdge(long edgeBits) {
+		return data.get(HEADER + 2 * (int) edgeBits + 1) - 1;
+	}
+
+}
@@ -0,0 +1,78 @@
+package jtjudge.Boxes.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Solves every position of a small board by retrograde analysis and writes the
+//results in the layout Tablebase reads. Drawing an edge only ever sets a bit,
+//so going through the sets of drawn edges from the full board down to the
+//empty one solves every position after all of the positions it leads to.
+//Arguments: rows cols [directory], writing Tablebase.fileName(rows, cols).
+public class TablebaseGenerator {
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("usage: TablebaseGenerator rows cols [directory]");
+			return;
+		}
+		int rows = Integer.parseInt(args[0]);
+		int cols = Integer.parseInt(args[1]);
+		File dir = new File(args.length > 2 ? args[2] : ".");
+		File file = new File(dir, Tablebase.fileName(rows, cols));
+		long start = System.nanoTime();
+		generate(rows, cols, file);
+		System.out.println("wrote " + file + " in " +
+				(System.nanoTime() - start) / 1000000 + "ms");
+	}
+
+	static void generate(int rows, int cols, File file) throws IOException {
+		Topology t = Topology.get(rows, cols);
+		int numEdges = t.getNumEdges();
+		if(numEdges > Tablebase.MAX_EDGES) throw new IllegalArgumentException();
+		//the edges around each box, as a mask
+		int[] boxes = new int[t.getNumSpaces()];
+		for(int s = 0; s < boxes.length; s++) {
+			for(int side = 0; side < 4; side++) {
+				boxes[s] |= 1 << t.spaceSides[4 * s + side];
+			}
+		}
+		int full = (1 << numEdges) - 1;
+		byte[] values = new byte[full + 1];
+		byte[] best = new byte[full + 1];
+		for(int drawn = full - 1; drawn >= 0; drawn--) {
+			int bestValue = Integer.MIN_VALUE, bestEdge = -1;
+			for(int e = 0; e < numEdges; e++) {
+				if((drawn & (1 << e)) != 0) continue;
+				int next = drawn | (1 << e);
+				int num = completes(next, t.edgeLeft[e], boxes) + completes(next, t.edgeRight[e], boxes);
+				//completing a box keeps the turn
+				int v = num > 0 ? num + values[next] : -values[next];
+				if(v > bestValue) {
+					bestValue = v;
+					bestEdge = e;
+				}
+			}
+			values[drawn] = (byte) bestValue;
+			best[drawn] = (byte) (bestEdge + 1);
+		}
+		try(RandomAccessFile f = new RandomAccessFile(file, "rw");
+				FileChannel channel = f.getChannel()) {
+			long size = Tablebase.HEADER + 2L * (full + 1);
+			f.setLength(size);
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(Tablebase.MAGIC).putInt(rows).putInt(cols).putInt(numEdges);
+			for(int drawn = 0; drawn <= full; drawn++) {
+				out.put(values[drawn]).put(best[drawn]);
+			}
+			out.force();
+		}
+	}
+
+	private static int completes(int drawn, int s, int[] boxes) {
+		return s >= 0 && (drawn & boxes[s]) == boxes[s] ? 1 : 0;
+	}
+
+}
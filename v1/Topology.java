@@ -0,0 +1,120 @@
+package jtjudge.Boxes.v1;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+//The fixed layout of a board of a given size: which boxes each edge borders,
+//which edges surround each box, where each edge starts and its Zobrist key.
+//None of it depends on play, so one instance is built per size and shared by
+//every Board of that size. The arrays are never written after construction.
+//Once no Board of a size is left the topology may be collected, as a big one
+//takes tens of megabytes.
+class Topology {
+
+	private final int rows;
+	private final int cols;
+	private final int numEdges;
+	private final int numSpaces;
+
+	//adjacency tables, -1 where an edge lies on the border
+	final int[] edgeLeft;
+	final int[] edgeRight;
+	final int[] spaceSides;	//four edges per box, in Board.LEFT..BOTTOM order
+
+	//point each edge leaves from, and its direction
+	private final int[] edgeRow;
+	private final int[] edgeCol;
+	private final boolean[] horizontal;
+
+	final long[] edgeKeys;
+
+	private static final ConcurrentHashMap<Long, WeakReference<Topology>> CACHE =
+			new ConcurrentHashMap<>();
+
+	private Topology(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		numEdges = rows * (cols + 1) + cols * (rows + 1);
+		numSpaces = rows * cols;
+		edgeLeft = new int[numEdges];
+		edgeRight = new int[numEdges];
+		spaceSides = new int[4 * numSpaces];
+		edgeRow = new int[numEdges];
+		edgeCol = new int[numEdges];
+		horizontal = new boolean[numEdges];
+		edgeKeys = new long[numEdges];
+		for(int e = 0; e < numEdges; e++) {
+			edgeKeys[e] = Board.mix(e + 1);
+		}
+		connect();
+	}
+
+	//Returns the shared topology for the given size, building it if none is
+	//in use.
+	static Topology get(int rows, int cols) {
+		if(rows < 1 || cols < 1) throw new IllegalArgumentException();
+		Long size = ((long) rows << 32) | cols;
+		while(true) {
+			WeakReference<Topology> ref = CACHE.get(size);
+			Topology t = ref == null ? null : ref.get();
+			if(t != null) return t;
+			t = new Topology(rows, cols);
+			WeakReference<Topology> made = new WeakReference<>(t);
+			if(ref == null ? CACHE.putIfAbsent(size, made) == null : CACHE.replace(size, ref, made)) {
+				return t;
+			}
+		}
+	}
+
+	int getRows() { return rows; }
+
+	int getCols() { return cols; }
+
+	int getNumEdges() { return numEdges; }
+
+	int getNumSpaces() { return numSpaces; }
+
+	int getRow(int e) { return edgeRow[e]; }
+
+	int getCol(int e) { return edgeCol[e]; }
+
+	boolean isHorizontal(int e) { return horizontal[e]; }
+
+	//Moves are numbered row by row: the leftmost vertical edge, then each top
+	//edge followed by the vertical edge to its right, with the bottom edges of
+	//the last row at the end.
+	private void connect() {
+		int width = 2 * cols + 1;
+		for(int e = 0; e < numEdges; e++) {
+			edgeLeft[e] = -1;
+			edgeRight[e] = -1;
+			if(e >= rows * width) {
+				//bottom edge
+				edgeRow[e] = rows;
+				edgeCol[e] = e - rows * width;
+				horizontal[e] = true;
+			} else {
+				//odd positions in a row are top edges, even are vertical
+				edgeRow[e] = e / width;
+				edgeCol[e] = (e % width) / 2;
+				horizontal[e] = e % width % 2 == 1;
+			}
+		}
+		for(int r = 0; r < rows; r++) {
+			for(int c = 0; c < cols; c++) {
+				int s = r * cols + c;
+				int left = r * width + 2 * c;
+				int bottom = r + 1 < rows ? (r + 1) * width + 2 * c + 1 : rows * width + c;
+				edgeRight[left] = s;
+				edgeRight[left + 1] = s;
+				edgeLeft[left + 2] = s;
+				edgeLeft[bottom] = s;
+				spaceSides[4 * s + Board.LEFT] = left;
+				spaceSides[4 * s + Board.TOP] = left + 1;
+				spaceSides[4 * s + Board.RIGHT] = left + 2;
+				spaceSides[4 * s + Board.BOTTOM] = bottom;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package jtjudge.Boxes.v1;
+
+//Fixed-size hash table of search results keyed by Board.getKey(). Each slot
+//holds one packed long, the value, the depth searched, the kind of bound and
+//the best edge, along with the key xored with it. A new result always replaces
+//the old one. Threads may probe and store at once without locking: if two
+//stores to a slot interleave, the key no longer matches its entry and the slot
+//reads as empty.
+class TranspositionTable {
+
+	static final int
+	EXACT = 0,
+	LOWER = 1,	//value is at least this
+	UPPER = 2;	//value is at most this
+
+	//values are stored in 20 bits
+	static final int MAX_VALUE = (1 << 19) - 1;
+
+	private final long[] keys;
+	private final long[] entries;
+	private final int mask;
+
+	//Creates a table with 2^bits slots.
+	TranspositionTable(int bits) {
+		if(bits < 1 || bits > 30) throw new IllegalArgumentException();
+		keys = new long[1 << bits];
+		entries = new long[1 << bits];
+		mask = (1 << bits) - 1;
+	}
+
+	//Returns the packed entry for the key, or 0 if there is none. Entries are
+	//never 0, since the stored edge is offset by one.
+	long probe(long key) {
+		int i = (int) key & mask;
+		long entry = entries[i];
+		return (keys[i] ^ entry) == key ? entry : 0;
+	}
+
+	void store(long key, int value, int depth, int bound, int edge) {
+		if(value > MAX_VALUE || value < -MAX_VALUE) return;
+		int i = (int) key & mask;
+		long entry = (value & 0xfffffL) | ((long) Math.min(depth, 0x3ff) << 20) |
+				((long) bound << 30) | ((long) (edge + 1) << 32);
+		entries[i] = entry;
+		keys[i] = key ^ entry;
+	}
+
+	void clear() {
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = 0;
+			entries[i] = 0;
+		}
+	}
+
+	static int getValue(long entry) { return ((int) entry << 12) >> 12; }
+
+	static int getDepth(long entry) { return (int) (entry >>> 20) & 0x3ff; }
+
+	static int getBound(long entry) { return (int) (entry >>> 30) & 3; }
+
+	static int getEdge(long entry) { return (int) (entry >>> 32) - 1; }
+
+}
@@ -0,0 +1,46 @@
+package jtjudge.Boxes.v1;
+
+import java.util.Arrays;
+
+//Growable stack of primitive undo records, with a parallel stack for the few
+//object references a record needs. Once both arrays have grown to the depth
+//of a search, pushing and popping allocate nothing.
+class UndoStack {
+
+	private int[] ints;
+	private int intTop;
+	private Object[] refs;
+	private int refTop;
+	
+	UndoStack() {
+		ints = new int[64];
+		intTop = 0;
+		refs = new Object[16];
+		refTop = 0;
+	}
+	
+	void push(int i) {
+		if(intTop == ints.length) ints = Arrays.copyOf(ints, intTop * 2);
+		ints[intTop++] = i;
+	}
+	
+	int pop() {
+		if(intTop == 0) throw new IllegalStateException();
+		return ints[--intTop];
+	}
+	
+	void pushRef(Object o) {
+		if(refTop == refs.length) refs = Arrays.copyOf(refs, refTop * 2);
+		refs[refTop++] = o;
+	}
+	
+	Object popRef() {
+		if(refTop == 0) throw new IllegalStateException();
+		Object o = refs[--refTop];
+		refs[refTop] = null;
+		return o;
+	}
+	
+	boolean isEmpty() { return intTop == 0; }
+
+}
@@ -15,6 +15,12 @@ import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JFrame;
 
@@ -31,6 +37,11 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 	FONT_SIZE = 6,
 	SCALE = 6;
 	
+	//longest a CPU may think about one move, and ponder on the human's turn
+	private static final long
+	MOVE_MILLIS = 100,
+	PONDER_MILLIS = 30000;
+	
 	private static final Color
 	LINE = Color.WHITE,
 	CURSOR = Color.GREEN,
@@ -45,6 +56,14 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 	private InputManager in;
 	private BufferedImage image;
 	
+	//CPU moves and hints are thought of on a copy of the game on another
+	//thread, so the window keeps drawing in the meantime
+	private final ExecutorService thinker;
+	private Future<ArrayList<Move>> thinking;
+	private Game thought;	//the copy being thought about
+	private Future<?> pondering;
+	private long ponderKey;	//of the position being pondered
+	
 	private int spaceSize, pointSize;
 	private boolean
 	running,
@@ -72,6 +91,15 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 		in = new InputManager(this);
 		
 		image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+		
+		thinker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Thinker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
 	}
 	
 	public void setUp(int rows, int cols, ArrayList<Player> players) {
@@ -121,20 +149,28 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 	}
 	
 	private void tick() {
+		if(pondering != null && (game.isFinished() || game.getKey() != ponderKey ||
+				game.getTurn().isCPU())) {
+			//the human has moved, and the table keeps what was found
+			stopPondering();
+		}
 		if(!game.isFinished()) {
 			Player player = game.getTurn();
 			if(player.isCPU()) {
-				Move m = player.thinkOfMove(game, player.getDiff());
-				game.make(m, player);
-			} else if(in.isKeyPressed("ENTER")) {
-				Move m = player.thinkOfMove(game, 4);
-				game.make(m, player);
+				Move m = think(player, player.getDiff());
+				if(m != null) game.make(m, player);
+			} else if(thinking != null || in.isKeyPressed("ENTER")) {
+				//a hint, thought of as a Lv 4 CPU would
+				stopPondering();
+				Move m = think(player, 4);
+				if(m != null) game.make(m, player);
 			} else {
+				if(pondering == null) ponder();
 				cursor = getMoveAtCoords(in.getX() - spaceSize, in.getY() - spaceSize);
 				if(cursor == null) {
 					if(!in.isMousePressed("RightClick") && player.hasStrategy()) {
-						Move m = player.doStrategy();
-						if(m.isAvailable()) game.make(m, player);
+						Move m = player.doStrategy(game);
+						if(m != null) game.make(m, player);
 					}
 					in.isMouseClicked("LeftClick"); //de-clicks the mouse if clicked
 				} else {
@@ -158,6 +194,8 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 			System.exit(0);
 		}
 		if(mouseOnReset && in.isMousePressed("LeftClick")) {
+			stopThinking();
+			stopPondering();
 			ArrayList<Player> players = game.getPlayers();
 			int rows = game.getRows(), cols = game.getCols();
 			game = new Game(rows, cols);
@@ -168,6 +206,84 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 		}
 	}
 	
+	//Returns the player's next move once it is ready, or null while it is
+	//still being thought of. Like Player.thinkOfMove(), a move left over from
+	//the player's strategy comes first.
+	private Move think(Player player, final int diff) {
+		if(thinking == null) {
+			Move m = player.doStrategy(game);
+			if(m != null) return m;
+			//the time starts now, so copying the game and handing it to the
+			//thinker count against it
+			final long deadline = Player.deadline(MOVE_MILLIS);
+			final Game copy = game.snapshot(diff);
+			thought = copy;
+			thinking = thinker.submit(new Callable<ArrayList<Move>>() {
+				@Override
+				public ArrayList<Move> call() {
+					return copy.analyze(diff, deadline);
+				}
+			});
+			return null;
+		}
+		if(!thinking.isDone()) return null;
+		ArrayList<Move> strategy;
+		try {
+			strategy = thinking.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			thinking = null;
+		}
+		//the copy's moves stand for the same edges of the real game
+		ArrayList<Move> plan = new ArrayList<>();
+		for(Move m : strategy) {
+			Move real = game.retrieve(m.getIndex());
+			if(real != null) plan.add(real);
+		}
+		player.planStrategy(plan, thought.getKey());
+		if(thought.isEndGame() && !game.isEndGame()) game.beginEndGame();
+		thought = null;
+		return player.doStrategy(game);
+	}
+	
+	//Cancels any thinking in progress, interrupting the search.
+	private void stopThinking() {
+		if(thinking != null) {
+			thinking.cancel(true);
+			thinking = null;
+			thought = null;
+		}
+	}
+	
+	//While a human is to move, searches their position on the thinking thread
+	//for the sake of a Lv 5 CPU, whose next search shares the table.
+	private void ponder() {
+		boolean searcher = false;
+		for(Player p : game.getPlayers()) {
+			if(p.isCPU() && p.getDiff() == 5) searcher = true;
+		}
+		if(!searcher) return;
+		final Game copy = game.snapshot(5);
+		ponderKey = game.getKey();
+		pondering = thinker.submit(new Runnable() {
+			@Override
+			public void run() {
+				copy.ponder(System.nanoTime() + PONDER_MILLIS * 1000000);
+			}
+		});
+	}
+	
+	private void stopPondering() {
+		if(pondering != null) {
+			pondering.cancel(true);
+			pondering = null;
+		}
+	}
+	
 	private void mouseOnExit() {
 		int x = in.getX(), y = in.getY();
 		if(portraitMode) {
@@ -216,17 +332,9 @@ public final class WindowGameRunner extends Canvas implements Runnable {
 		int innerX = x % (spaceSize + pointSize);
 		int innerY = y % (spaceSize + pointSize);
 		if(innerX > pointSize && innerY < pointSize) {
-			String p1 = Character.toString((char)(col + 65)) +
-					Character.toString((char)(row + 48 + 1));
-			String p2 = Character.toString((char)(col + 65 + 1)) + 
-					Character.toString((char)(row + 48 + 1));
-			return game.retrieve(p1 + ", " + p2);
+			return game.retrieve(row, col, true);
 		} else if(innerX < pointSize && innerY > pointSize) {
-			String p1 = Character.toString((char)(col + 65)) +
-					Character.toString((char)(row + 48 + 1));
-			String p2 = Character.toString((char)(col + 65)) + 
-					Character.toString((char)(row + 48 + 2));
-			return game.retrieve(p1 + ", " + p2);
+			return game.retrieve(row, col, false);
 		} else {
 			return null;
 		}